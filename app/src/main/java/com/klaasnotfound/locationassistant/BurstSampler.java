@@ -0,0 +1,269 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.Manifest;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Obtains a location every few minutes by briefly switching a LocationAssistant to high accuracy.
+ * <p>
+ * At the start of every period, the sampler requests high-accuracy updates and collects fixes until one meets the
+ * accuracy target or the burst duration expires. It then delivers the best fix of the burst and drops the
+ * LocationAssistant back to passive updates until the next period starts. Start the LocationAssistant with
+ * {@link LocationAssistant.Accuracy#HIGH} before you call {@link #start()}, so the location settings are resolved for
+ * high accuracy (e.g. GPS switched on) while the user is looking at your app. Started with any lower accuracy, the
+ * LocationAssistant checks the settings again at the first burst, which may have to prompt the user via
+ * {@link LocationAssistant.Listener#onNeedLocationSettingsChange()} while the app is in the background.
+ * <p>
+ * Bursts are scheduled with the {@link AlarmManager}, so they also happen while the device is asleep. If the app holds
+ * the {@code WAKE_LOCK} permission, the sampler keeps the CPU awake for the length of each burst; otherwise the device
+ * may fall asleep again before a fix arrives. In Doze mode, the system delivers such alarms at most every 9 minutes or
+ * so, which stretches shorter periods accordingly.
+ */
+public class BurstSampler {
+
+    /**
+     * Receives the result of each burst.
+     */
+    public interface Listener {
+        /**
+         * Called at the end of every burst.
+         *
+         * @param location  the most accurate fix of the burst, or {@code null} if none was received
+         * @param targetMet whether or not the fix met the accuracy target
+         */
+        void onBurstCompleted(Location location, boolean targetMet);
+    }
+
+    private static final long BURST_UPDATE_INTERVAL = 1000;
+    private static final long WAKE_LOCK_SLACK = 5000;
+
+    private final Context context;
+    private final LocationAssistant assistant;
+    private final long period;
+    private final float accuracyTarget;
+    private final long burstDuration;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AlarmManager alarmManager;
+    private final PendingIntent alarmIntent;
+    private final String alarmAction;
+    private PowerManager.WakeLock wakeLock;
+
+    private LocationStream.Subscription subscription;
+    private boolean inBurst;
+    private long burstStart;
+    private Location burstBest;
+
+    // Statistics
+    private int numBursts;
+    private int numSuccessfulBursts;
+    private long lastTimeToFix = -1;
+    private long totalTimeToFix;
+
+    /**
+     * Constructs a BurstSampler.
+     *
+     * @param context        the context of the application or service that owns the LocationAssistant
+     * @param assistant      the LocationAssistant to control
+     * @param period         the time (in milliseconds) between the starts of two bursts
+     * @param accuracyTarget the accuracy (in meters) at which a burst ends early
+     * @param burstDuration  the maximum length (in milliseconds) of a burst
+     * @param listener       a listener that will receive the result of each burst
+     */
+    public BurstSampler(Context context, LocationAssistant assistant, long period, float accuracyTarget,
+                        long burstDuration, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.assistant = assistant;
+        this.period = period;
+        this.accuracyTarget = accuracyTarget;
+        this.burstDuration = Math.min(burstDuration, period);
+        this.listener = listener;
+        alarmManager = (AlarmManager) this.context.getSystemService(Context.ALARM_SERVICE);
+        alarmAction = this.context.getPackageName() + ".BURST_" + System.identityHashCode(this);
+        alarmIntent = PendingIntent.getBroadcast(this.context, 0,
+                new Intent(alarmAction).setPackage(this.context.getPackageName()), PendingIntent.FLAG_UPDATE_CURRENT);
+        if (this.context.checkCallingOrSelfPermission(Manifest.permission.WAKE_LOCK) ==
+                PackageManager.PERMISSION_GRANTED) {
+            PowerManager pm = (PowerManager) this.context.getSystemService(Context.POWER_SERVICE);
+            wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, getClass().getSimpleName());
+            wakeLock.setReferenceCounted(false);
+        }
+    }
+
+    /**
+     * Starts sampling, beginning with a burst right away.
+     */
+    public void start() {
+        if (subscription != null) return;
+        subscription = assistant.getLocationStream().subscribe(onBurstLocation,
+                LocationStream.Backpressure.LATEST, 1, new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        handler.post(command);
+                    }
+                });
+        subscription.request(Long.MAX_VALUE);
+        context.registerReceiver(alarmReceiver, new IntentFilter(alarmAction), null, handler);
+        handler.post(startBurst);
+    }
+
+    /**
+     * Stops sampling. The LocationAssistant is left at passive accuracy.
+     */
+    public void stop() {
+        if (subscription == null) return;
+        subscription.cancel();
+        subscription = null;
+        alarmManager.cancel(alarmIntent);
+        context.unregisterReceiver(alarmReceiver);
+        handler.removeCallbacks(startBurst);
+        handler.removeCallbacks(burstExpired);
+        inBurst = false;
+        burstBest = null;
+        releaseWakeLock();
+        assistant.setAccuracy(LocationAssistant.Accuracy.PASSIVE, period);
+    }
+
+    /**
+     * Returns the number of completed bursts.
+     *
+     * @return the number of bursts
+     */
+    public int getNumBursts() {
+        return numBursts;
+    }
+
+    /**
+     * Returns the share of bursts that produced a fix meeting the accuracy target.
+     *
+     * @return the success rate, between 0 and 1
+     */
+    public float getSuccessRate() {
+        return numBursts == 0 ? 0 : (float) numSuccessfulBursts / numBursts;
+    }
+
+    /**
+     * Returns the time it took the last successful burst to meet the accuracy target.
+     *
+     * @return the time to fix (in milliseconds), or -1 if no burst has been successful yet
+     */
+    public long getLastTimeToFix() {
+        return lastTimeToFix;
+    }
+
+    /**
+     * Returns the average time it took successful bursts to meet the accuracy target.
+     *
+     * @return the mean time to fix (in milliseconds), or -1 if no burst has been successful yet
+     */
+    public long getMeanTimeToFix() {
+        return numSuccessfulBursts == 0 ? -1 : totalTimeToFix / numSuccessfulBursts;
+    }
+
+    private void finishBurst(boolean targetMet) {
+        inBurst = false;
+        handler.removeCallbacks(burstExpired);
+        numBursts++;
+        if (targetMet) {
+            numSuccessfulBursts++;
+            lastTimeToFix = SystemClock.elapsedRealtime() - burstStart;
+            totalTimeToFix += lastTimeToFix;
+        }
+        assistant.setAccuracy(LocationAssistant.Accuracy.PASSIVE, period);
+        Location best = burstBest;
+        burstBest = null;
+        if (listener != null) listener.onBurstCompleted(best, targetMet);
+        releaseWakeLock();
+    }
+
+    private void scheduleNextBurst() {
+        long triggerAt = SystemClock.elapsedRealtime() + period;
+        if (Build.VERSION.SDK_INT >= 23)
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, alarmIntent);
+        else if (Build.VERSION.SDK_INT >= 19)
+            alarmManager.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, alarmIntent);
+        else
+            alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, alarmIntent);
+    }
+
+    private void releaseWakeLock() {
+        if (wakeLock != null && wakeLock.isHeld()) wakeLock.release();
+    }
+
+    private final Runnable startBurst = new Runnable() {
+        @Override
+        public void run() {
+            if (subscription == null) return;
+            if (inBurst) finishBurst(false);
+            // The timeout makes sure the CPU is released even if the burst never finishes
+            if (wakeLock != null) wakeLock.acquire(burstDuration + WAKE_LOCK_SLACK);
+            inBurst = true;
+            burstStart = SystemClock.elapsedRealtime();
+            burstBest = null;
+            assistant.setAccuracy(LocationAssistant.Accuracy.HIGH, BURST_UPDATE_INTERVAL);
+            handler.postDelayed(burstExpired, burstDuration);
+            scheduleNextBurst();
+        }
+    };
+
+    private final BroadcastReceiver alarmReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            startBurst.run();
+        }
+    };
+
+    private final Runnable burstExpired = new Runnable() {
+        @Override
+        public void run() {
+            if (inBurst) finishBurst(false);
+        }
+    };
+
+    private final LocationStream.Subscriber onBurstLocation = new LocationStream.Subscriber() {
+        @Override
+        public void onSubscribe(LocationStream.Subscription subscription) {
+        }
+
+        @Override
+        public void onNext(Location location) {
+            if (!inBurst || !location.hasAccuracy()) return;
+            // Ignore fixes that were obtained before the burst started
+            if (Build.VERSION.SDK_INT >= 17 && location.getElapsedRealtimeNanos() / 1000000 < burstStart) return;
+            if (burstBest == null || location.getAccuracy() < burstBest.getAccuracy())
+                burstBest = location;
+            if (burstBest.getAccuracy() <= accuracyTarget)
+                finishBurst(true);
+        }
+    };
+}
@@ -0,0 +1,189 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a LocationAssistant within a battery budget for a session of known length.
+ * <p>
+ * On every {@link #start()}, the controller builds a ladder of settings, starting with the accuracy and update interval
+ * the LocationAssistant has at that moment. Further down the ladder, the interval is doubled up to a maximum, then the
+ * accuracy is lowered, until only passive updates remain. At regular intervals, the controller adds up the estimated
+ * spend and picks the best setting whose cost can still be afforded for the rest of the session. Call {@link #start()}
+ * and {@link #stop()} together with {@link LocationAssistant#start()} and {@link LocationAssistant#stop()}. The
+ * controller runs on the main thread, no matter which thread it was created on.
+ */
+public class EnergyBudgetController {
+
+    private final LocationAssistant assistant;
+    private final EnergyModel model;
+    private final float budget;
+    private final long sessionDuration;
+    private final long maxInterval;
+    private final long checkInterval;
+    private final List<LocationAssistant.Accuracy> ladderAccuracy = new ArrayList<LocationAssistant.Accuracy>();
+    private final List<Long> ladderInterval = new ArrayList<Long>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private boolean running;
+    private LocationAssistant.Accuracy originalAccuracy;
+    private long originalInterval;
+    private long sessionStart;
+    private long lastCheck;
+    private float spent;
+    private int step;
+
+    /**
+     * Constructs an EnergyBudgetController.
+     *
+     * @param assistant       the LocationAssistant to control
+     * @param model           the model used to estimate the cost of location updates
+     * @param budget          the battery budget (in mAh) for the session
+     * @param sessionDuration the expected length of the session (in milliseconds)
+     * @param maxInterval     the longest update interval (in milliseconds) to try before lowering the accuracy
+     * @param checkInterval   how often (in milliseconds) the controller re-evaluates the settings
+     */
+    public EnergyBudgetController(LocationAssistant assistant, EnergyModel model, float budget, long sessionDuration,
+                                  long maxInterval, long checkInterval) {
+        this.assistant = assistant;
+        this.model = model;
+        this.budget = budget;
+        this.sessionDuration = sessionDuration;
+        this.maxInterval = maxInterval;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Starts a new session and applies the best affordable setting.
+     */
+    public void start() {
+        if (running) return;
+        running = true;
+        originalAccuracy = assistant.getAccuracy();
+        originalInterval = assistant.getUpdateInterval();
+        buildLadder();
+        sessionStart = SystemClock.elapsedRealtime();
+        lastCheck = sessionStart;
+        spent = 0;
+        step = -1;
+        check();
+    }
+
+    /**
+     * Stops monitoring and restores the accuracy and update interval that were in effect when {@link #start()} was
+     * called. The spend up to this point remains available.
+     */
+    public void stop() {
+        if (!running) return;
+        accumulate(SystemClock.elapsedRealtime());
+        running = false;
+        handler.removeCallbacks(checkRunnable);
+        if (assistant.getAccuracy() != originalAccuracy || assistant.getUpdateInterval() != originalInterval)
+            assistant.setAccuracy(originalAccuracy, originalInterval);
+    }
+
+    /**
+     * Returns the estimated battery drain of the current session so far.
+     *
+     * @return the estimated spend (in mAh)
+     */
+    public float getEstimatedSpend() {
+        if (!running || step < 0) return spent;
+        long now = SystemClock.elapsedRealtime();
+        return spent + currentCostPerMinute() * (now - lastCheck) / 60000f;
+    }
+
+    /**
+     * Returns the part of the budget that has not been spent yet.
+     *
+     * @return the remaining budget (in mAh), never negative
+     */
+    public float getRemainingBudget() {
+        return Math.max(budget - getEstimatedSpend(), 0);
+    }
+
+    /**
+     * Returns the estimated cost of the setting that is currently applied.
+     *
+     * @return the estimated battery drain (in mAh per minute)
+     */
+    public float getCurrentCostPerMinute() {
+        return step < 0 ? 0 : currentCostPerMinute();
+    }
+
+    // The top of the ladder is the setting that stop() restores
+    private void buildLadder() {
+        ladderAccuracy.clear();
+        ladderInterval.clear();
+        LocationAssistant.Accuracy[] tiers = LocationAssistant.Accuracy.values();
+        long baseInterval = Math.max(originalInterval, 1);
+        for (int t = originalAccuracy.ordinal(); t < tiers.length - 1; t++) {
+            for (long interval = baseInterval; interval <= Math.max(maxInterval, baseInterval); interval *= 2) {
+                ladderAccuracy.add(tiers[t]);
+                ladderInterval.add(interval);
+            }
+        }
+        ladderAccuracy.add(LocationAssistant.Accuracy.PASSIVE);
+        ladderInterval.add(Math.max(maxInterval, baseInterval));
+    }
+
+    private float currentCostPerMinute() {
+        return model.getCostPerMinute(ladderAccuracy.get(step), ladderInterval.get(step));
+    }
+
+    private void accumulate(long now) {
+        if (step >= 0)
+            spent += currentCostPerMinute() * (now - lastCheck) / 60000f;
+        lastCheck = now;
+    }
+
+    private void check() {
+        long now = SystemClock.elapsedRealtime();
+        accumulate(now);
+
+        // Spread the remaining budget evenly over the remaining session
+        float remaining = Math.max(budget - spent, 0);
+        float minutesLeft = Math.max(sessionStart + sessionDuration - now, checkInterval) / 60000f;
+        float affordable = remaining / minutesLeft;
+
+        int best = ladderAccuracy.size() - 1;
+        for (int i = 0; i < ladderAccuracy.size(); i++) {
+            if (model.getCostPerMinute(ladderAccuracy.get(i), ladderInterval.get(i)) <= affordable) {
+                best = i;
+                break;
+            }
+        }
+        if (best != step) {
+            step = best;
+            assistant.setAccuracy(ladderAccuracy.get(step), ladderInterval.get(step));
+        }
+        handler.postDelayed(checkRunnable, checkInterval);
+    }
+
+    private final Runnable checkRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (running) check();
+        }
+    };
+}
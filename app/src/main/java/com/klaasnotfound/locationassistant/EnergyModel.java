@@ -0,0 +1,65 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+/**
+ * A simple model of the battery drain caused by location updates.
+ * <p>
+ * For each {@link LocationAssistant.Accuracy} tier, the model assumes a constant base current (e.g. for keeping the
+ * radios listening) plus a fixed charge per fix. The resulting cost depends on the update interval. The default
+ * constants are rough estimates for a typical phone - calibrate them with measurements from your target devices.
+ */
+public class EnergyModel {
+
+    private final float[] baseCurrent = new float[LocationAssistant.Accuracy.values().length];
+    private final float[] chargePerFix = new float[LocationAssistant.Accuracy.values().length];
+
+    /**
+     * Constructs an EnergyModel with default constants.
+     */
+    public EnergyModel() {
+        setTierCost(LocationAssistant.Accuracy.HIGH, 2f, 30f);
+        setTierCost(LocationAssistant.Accuracy.MEDIUM, 1f, 5f);
+        setTierCost(LocationAssistant.Accuracy.LOW, 0.5f, 2f);
+        setTierCost(LocationAssistant.Accuracy.PASSIVE, 0f, 0f);
+    }
+
+    /**
+     * Calibrates the cost of an accuracy tier.
+     *
+     * @param accuracy     the accuracy tier
+     * @param baseCurrent  the constant current draw (in mA) while location updates are requested
+     * @param chargePerFix the additional charge (in mAs) spent on every fix
+     */
+    public void setTierCost(LocationAssistant.Accuracy accuracy, float baseCurrent, float chargePerFix) {
+        this.baseCurrent[accuracy.ordinal()] = baseCurrent;
+        this.chargePerFix[accuracy.ordinal()] = chargePerFix;
+    }
+
+    /**
+     * Estimates the cost of receiving location updates with the given settings.
+     *
+     * @param accuracy       the accuracy tier
+     * @param updateInterval the update interval (in milliseconds)
+     * @return the estimated battery drain (in mAh per minute)
+     */
+    public float getCostPerMinute(LocationAssistant.Accuracy accuracy, long updateInterval) {
+        int i = accuracy.ordinal();
+        float current = baseCurrent[i] + chargePerFix[i] * 1000f / Math.max(updateInterval, 1);
+        return current / 60f;
+    }
+}
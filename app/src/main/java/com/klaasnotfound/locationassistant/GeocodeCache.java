@@ -0,0 +1,369 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Geocoder;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reverse geocodes locations and caches the results by map cell, so consecutive locations on the same street cost a
+ * single lookup.
+ * <p>
+ * Locations are grouped into the slippy-map tiles of a configurable zoom level (at zoom level 19, a tile is roughly 75m
+ * wide at the equator). Addresses are kept in a bounded in-memory LRU cache and, optionally, in a bounded directory on
+ * disk that survives restarts (least recently used files are evicted first). Lookups that miss both run on a background
+ * thread, and concurrent lookups for the same cell share a single backend request. Call {@link #lookup(Location)} from
+ * the main thread; results are delivered on the main thread as well. Attach the cache to a LocationAssistant with
+ * {@link LocationAssistant#setGeocodeCache(GeocodeCache)} to have every valid location geocoded.
+ */
+public class GeocodeCache {
+
+    /**
+     * Translates coordinates into a human-readable address.
+     */
+    public interface Backend {
+        /**
+         * Called on a background thread to look up the address at the given coordinates.
+         *
+         * @param latitude  the latitude (in degrees)
+         * @param longitude the longitude (in degrees)
+         * @return the address, or {@code null} if none was found
+         * @throws IOException if the lookup failed (e.g. because the network is unavailable)
+         */
+        String reverseGeocode(double latitude, double longitude) throws IOException;
+    }
+
+    /**
+     * Receives the results of lookups.
+     */
+    public interface Listener {
+        /**
+         * Called when the address for a location is available.
+         *
+         * @param location the location that was looked up
+         * @param address  the address of the location's cell
+         */
+        void onAddressAvailable(Location location, String address);
+
+        /**
+         * Called when no address could be determined for a location.
+         *
+         * @param location the location that was looked up
+         * @param message  a plain-text message with optional details
+         */
+        void onAddressUnavailable(Location location, String message);
+    }
+
+    /**
+     * A backend that uses the platform's {@link Geocoder}.
+     */
+    public static class AndroidGeocoderBackend implements Backend {
+
+        private final Geocoder geocoder;
+
+        public AndroidGeocoderBackend(Context context) {
+            geocoder = new Geocoder(context.getApplicationContext());
+        }
+
+        @Override
+        public String reverseGeocode(double latitude, double longitude) throws IOException {
+            List<Address> addresses = geocoder.getFromLocation(latitude, longitude, 1);
+            if (addresses == null || addresses.isEmpty()) return null;
+            Address address = addresses.get(0);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i <= address.getMaxAddressLineIndex(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(address.getAddressLine(i));
+            }
+            return sb.toString();
+        }
+    }
+
+    private final Backend backend;
+    private final int zoom;
+    private final File diskDir;
+    private final int diskCapacity;
+    private final Listener listener;
+    private final LruCache<Long, String> memory;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    // Guards all disk accesses, numDiskEntries is -1 until the directory has been prepared
+    private final Object diskLock = new Object();
+    private int numDiskEntries = -1;
+
+    // Only accessed on the main thread
+    private final Map<Long, List<Location>> pending = new HashMap<Long, List<Location>>();
+    private long numMemoryHits;
+    private long numDiskHits;
+    private long numMisses;
+    private long numCoalesced;
+
+    /**
+     * Constructs a GeocodeCache.
+     *
+     * @param backend        the backend that performs the actual lookups
+     * @param zoom           the zoom level of the map cells that share an address (0-24)
+     * @param memoryCapacity the maximum number of addresses kept in memory
+     * @param diskDir        a directory for persisting addresses, or {@code null} to only cache in memory
+     * @param diskCapacity   the maximum number of addresses kept on disk (ignored if {@code diskDir} is {@code null})
+     * @param listener       a listener that will receive the results
+     */
+    public GeocodeCache(Backend backend, int zoom, int memoryCapacity, File diskDir, int diskCapacity,
+                        Listener listener) {
+        if (zoom < 0 || zoom > 24) throw new IllegalArgumentException("Zoom level must be between 0 and 24.");
+        if (diskDir != null && diskCapacity < 1) throw new IllegalArgumentException("Disk capacity must be positive.");
+        this.backend = backend;
+        this.zoom = zoom;
+        this.diskDir = diskDir;
+        this.diskCapacity = diskCapacity;
+        this.listener = listener;
+        memory = new LruCache<Long, String>(memoryCapacity);
+    }
+
+    /**
+     * Looks up the address of a location. If it is cached in memory, the listener is called right away.
+     *
+     * @param location the location to look up
+     */
+    public void lookup(final Location location) {
+        final long key = getCellKey(location.getLatitude(), location.getLongitude());
+        String address = memory.get(key);
+        if (address != null) {
+            numMemoryHits++;
+            listener.onAddressAvailable(location, address);
+            return;
+        }
+
+        List<Location> waiting = pending.get(key);
+        if (waiting != null) {
+            numCoalesced++;
+            waiting.add(location);
+            return;
+        }
+        waiting = new ArrayList<Location>();
+        waiting.add(location);
+        pending.put(key, waiting);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                resolve(key, location);
+            }
+        });
+    }
+
+    /**
+     * Stops the background threads. The cache must not be used afterwards.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the number of lookups answered from memory.
+     */
+    public long getNumMemoryHits() {
+        return numMemoryHits;
+    }
+
+    /**
+     * Returns the number of lookups answered from disk.
+     */
+    public long getNumDiskHits() {
+        return numDiskHits;
+    }
+
+    /**
+     * Returns the number of lookups that had to be sent to the backend.
+     */
+    public long getNumMisses() {
+        return numMisses;
+    }
+
+    /**
+     * Returns the number of lookups that joined a backend or disk request already in flight for the same cell.
+     */
+    public long getNumCoalesced() {
+        return numCoalesced;
+    }
+
+    private long getCellKey(double latitude, double longitude) {
+        return ((long) TileTracker.getTileX(longitude, zoom) << 32) | TileTracker.getTileY(latitude, zoom);
+    }
+
+    private void resolve(final long key, Location location) {
+        String address = diskDir != null ? readFromDisk(key) : null;
+        final boolean fromDisk = address != null;
+        String message = null;
+        if (address == null) {
+            try {
+                address = backend.reverseGeocode(location.getLatitude(), location.getLongitude());
+                if (address == null) message = "No address found.";
+                else if (diskDir != null) writeToDisk(key, address);
+            } catch (IOException e) {
+                message = "Could not look up address:\n" + e.getMessage();
+            }
+        }
+
+        final String result = address;
+        final String error = message;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (fromDisk) numDiskHits++;
+                else numMisses++;
+                if (result != null) memory.put(key, result);
+                List<Location> waiting = pending.remove(key);
+                if (waiting == null) return;
+                for (Location l : waiting) {
+                    if (result != null) listener.onAddressAvailable(l, result);
+                    else listener.onAddressUnavailable(l, error);
+                }
+            }
+        });
+    }
+
+    private File getDiskFile(long key) {
+        return new File(diskDir, zoom + "_" + Long.toHexString(key));
+    }
+
+    // Creates the directory and counts its entries on the first disk access, i.e. on a background thread
+    private void prepareDisk() {
+        if (numDiskEntries >= 0) return;
+        diskDir.mkdirs();
+        File[] files = diskDir.listFiles();
+        numDiskEntries = 0;
+        if (files == null) return;
+        for (File file : files) {
+            // Left over from an interrupted write
+            if (file.getName().endsWith(".tmp")) file.delete();
+            else numDiskEntries++;
+        }
+        if (numDiskEntries > diskCapacity) evict();
+    }
+
+    // Deletes the least recently used files until the directory is 10% below capacity, so this rarely runs
+    private void evict() {
+        File[] files = diskDir.listFiles();
+        if (files == null) return;
+        final long[] lastUsed = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastUsed[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return lastUsed[a] < lastUsed[b] ? -1 : lastUsed[a] > lastUsed[b] ? 1 : 0;
+            }
+        });
+        int target = diskCapacity - diskCapacity / 10;
+        numDiskEntries = files.length;
+        for (int i = 0; i < order.length && numDiskEntries > target; i++)
+            if (files[order[i]].delete()) numDiskEntries--;
+    }
+
+    private String readFromDisk(long key) {
+        synchronized (diskLock) {
+            prepareDisk();
+            File file = getDiskFile(key);
+            if (!file.exists()) return null;
+            String address = readFile(file);
+            // The modification time doubles as the time of last use for eviction
+            if (address != null) file.setLastModified(System.currentTimeMillis());
+            return address;
+        }
+    }
+
+    private String readFile(File file) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[256];
+            int n;
+            while ((n = in.read(buf)) > 0)
+                out.write(buf, 0, n);
+            return out.toString("UTF-8");
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing we can do
+                }
+            }
+        }
+    }
+
+    private void writeToDisk(long key, String address) {
+        synchronized (diskLock) {
+            prepareDisk();
+            File file = getDiskFile(key);
+            boolean isNew = !file.exists();
+            if (writeFile(file, address) && isNew && ++numDiskEntries > diskCapacity) evict();
+        }
+    }
+
+    private boolean writeFile(File file, String address) {
+        File tmp = new File(diskDir, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            out.write(address.getBytes("UTF-8"));
+            out.close();
+            out = null;
+            if (tmp.renameTo(file)) return true;
+            tmp.delete();
+            return false;
+        } catch (IOException e) {
+            // Not being able to persist is no reason to fail the lookup
+            tmp.delete();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing we can do
+                }
+            }
+        }
+    }
+}
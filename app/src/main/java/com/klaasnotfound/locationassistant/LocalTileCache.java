@@ -0,0 +1,121 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+/**
+ * A stand-in {@link TileTracker.TileFetcher} that does not load anything, but remembers which tiles it would have
+ * loaded. Use it to measure how often the tiles the user enters have already been prefetched before wiring up a real
+ * tile source.
+ */
+public class LocalTileCache implements TileTracker.TileFetcher {
+
+    private final long[] keys;
+    private final boolean[] prefetched;
+    private int size;
+    private int next;
+
+    private long numFetches;
+    private long numHits;
+    private long numPrefetchHits;
+    private long numPrefetches;
+
+    /**
+     * Constructs a LocalTileCache.
+     *
+     * @param capacity the number of tiles to remember (the oldest ones are forgotten first)
+     */
+    public LocalTileCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive.");
+        keys = new long[capacity];
+        prefetched = new boolean[capacity];
+    }
+
+    @Override
+    public void fetch(int zoom, int x, int y) {
+        numFetches++;
+        int i = indexOf(toKey(zoom, x, y));
+        if (i < 0) {
+            insert(toKey(zoom, x, y), false);
+            return;
+        }
+        numHits++;
+        if (prefetched[i]) {
+            numPrefetchHits++;
+            prefetched[i] = false;
+        }
+    }
+
+    @Override
+    public void prefetch(int zoom, int x, int y, int rank) {
+        long key = toKey(zoom, x, y);
+        if (indexOf(key) >= 0) return;
+        numPrefetches++;
+        insert(key, true);
+    }
+
+    /**
+     * Returns the share of entered tiles that were already in the cache.
+     *
+     * @return the hit rate, between 0 and 1
+     */
+    public float getHitRate() {
+        return numFetches == 0 ? 0 : (float) numHits / numFetches;
+    }
+
+    /**
+     * Returns the share of entered tiles that were in the cache because they had been prefetched.
+     *
+     * @return the prefetch hit rate, between 0 and 1
+     */
+    public float getPrefetchHitRate() {
+        return numFetches == 0 ? 0 : (float) numPrefetchHits / numFetches;
+    }
+
+    /**
+     * Returns the share of prefetched tiles that the user actually entered.
+     *
+     * @return the prefetch precision, between 0 and 1
+     */
+    public float getPrefetchPrecision() {
+        return numPrefetches == 0 ? 0 : (float) numPrefetchHits / numPrefetches;
+    }
+
+    public long getNumFetches() {
+        return numFetches;
+    }
+
+    public long getNumPrefetches() {
+        return numPrefetches;
+    }
+
+    private static long toKey(int zoom, int x, int y) {
+        return ((long) zoom << 58) | ((long) x << 29) | y;
+    }
+
+    private int indexOf(long key) {
+        for (int i = 0; i < size; i++)
+            if (keys[i] == key) return i;
+        return -1;
+    }
+
+    private void insert(long key, boolean wasPrefetched) {
+        keys[next] = key;
+        prefetched[next] = wasPrefetched;
+        next = (next + 1) % keys.length;
+        if (size < keys.length) size++;
+    }
+}
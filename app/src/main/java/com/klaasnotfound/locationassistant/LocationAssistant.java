@@ -20,20 +20,16 @@ import android.Manifest;
 import android.app.Activity;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.Intent;
 import android.content.IntentSender;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationManager;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.provider.Settings;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.ActivityCompat;
-import android.support.v4.content.ContextCompat;
 import android.util.Log;
 import android.view.View;
 
@@ -41,10 +37,8 @@ import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.common.api.Status;
-import com.google.android.gms.location.LocationAvailability;
 import com.google.android.gms.location.LocationListener;
 import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.LocationSettingsRequest;
 import com.google.android.gms.location.LocationSettingsResult;
 import com.google.android.gms.location.LocationSettingsStatusCodes;
@@ -171,13 +165,15 @@ public class LocationAssistant
         RETRIEVAL
     }
 
-    private final int REQUEST_CHECK_SETTINGS = 0;
-    private final int REQUEST_LOCATION_PERMISSION = 1;
+    static final int REQUEST_CHECK_SETTINGS = 0;
+    static final int REQUEST_LOCATION_PERMISSION = 1;
+    static final long RECHECK_DELAY = 10000;
 
     // Parameters
     protected Context context;
     private Activity activity;
     private Listener listener;
+    private Accuracy accuracy;
     private int priority;
     private long updateInterval;
     private boolean allowMockLocations;
@@ -190,17 +186,36 @@ public class LocationAssistant
     private boolean locationStatusOk;
     private boolean changeSettings;
     private boolean updatesRequested;
+    private Accuracy checkingAccuracy;
+    private Accuracy settingsAccuracy;
     protected Location bestLocation;
-    private GoogleApiClient googleApiClient;
+    private LocationStream locationStream;
+    private TileTracker tileTracker;
+    private GeocodeCache geocodeCache;
+    private final LocationPlatform platform;
+    private LocationPlatform.Client client;
+    private boolean started;
+    private boolean initializing;
     private LocationRequest locationRequest;
     private Status locationStatus;
     private boolean mockLocationsEnabled;
     private int numTimesPermissionDeclined;
 
+    // Acquisition latency
+    private long startTime;
+    private long timeToFirstFix = -1;
+    private long timeToLastKnownLocation = -1;
+    private int numServiceCalls;
+
     // Mock location rejection
     private Location lastMockLocation;
     private int numGoodReadings;
 
+    // Created on first use
+    private SettingsClickListener onGoToLocationSettings;
+    private SettingsClickListener onGoToDevSettings;
+    private SettingsClickListener onGoToAppSettings;
+
     /**
      * Constructs a LocationAssistant instance that will listen for valid location updates.
      *
@@ -212,35 +227,21 @@ public class LocationAssistant
      */
     public LocationAssistant(final Context context, Listener listener, Accuracy accuracy, long updateInterval,
                              boolean allowMockLocations) {
+        this(context, listener, accuracy, updateInterval, allowMockLocations, new LocationPlatform());
+    }
+
+    LocationAssistant(Context context, Listener listener, Accuracy accuracy, long updateInterval,
+                      boolean allowMockLocations, LocationPlatform platform) {
+        this.platform = platform;
         this.context = context;
         if (context instanceof Activity)
             this.activity = (Activity) context;
         this.listener = listener;
-        switch (accuracy) {
-            case HIGH:
-                priority = LocationRequest.PRIORITY_HIGH_ACCURACY;
-                break;
-            case MEDIUM:
-                priority = LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
-                break;
-            case LOW:
-                priority = LocationRequest.PRIORITY_LOW_POWER;
-                break;
-            case PASSIVE:
-            default:
-                priority = LocationRequest.PRIORITY_NO_POWER;
-        }
+        this.accuracy = accuracy;
+        this.priority = toPriority(accuracy);
         this.updateInterval = updateInterval;
         this.allowMockLocations = allowMockLocations;
-
-        // Set up the Google API client
-        if (googleApiClient == null) {
-            googleApiClient = new GoogleApiClient.Builder(context)
-                    .addConnectionCallbacks(this)
-                    .addOnConnectionFailedListener(this)
-                    .addApi(LocationServices.API)
-                    .build();
-        }
+        // Everything else is set up on a background thread when the LocationAssistant is first started
     }
 
     /**
@@ -265,10 +266,33 @@ public class LocationAssistant
     /**
      * Starts the LocationAssistant and makes it subscribe to valid location updates.
      * Call this method when your application or activity becomes awake.
+     * The first call sets up the Google API client on a background thread and connects once that is done.
      */
     public void start() {
-        checkMockLocations();
-        googleApiClient.connect();
+        started = true;
+        startTime = platform.elapsedRealtime();
+        timeToFirstFix = -1;
+        timeToLastKnownLocation = -1;
+        numServiceCalls = 0;
+        if (initializing) return;
+        if (client != null && Build.VERSION.SDK_INT >= 18) {
+            // Nothing left to do in the background
+            mockLocationsEnabled = false;
+            numServiceCalls++;
+            client.connect();
+            return;
+        }
+        initialize();
+    }
+
+    /**
+     * Sets up the Google API client on a background thread, so that the first call to {@link #start()} is cheap.
+     * Calling this method is optional - {@link #start()} will do the same if necessary. You may want to call it right
+     * after constructing the LocationAssistant, e.g. in {@link android.app.Application#onCreate()}.
+     */
+    public void prewarm() {
+        if (initializing || client != null) return;
+        initialize();
     }
 
     /**
@@ -291,14 +315,17 @@ public class LocationAssistant
      * Call this method right before your application or activity goes to sleep.
      */
     public void stop() {
-        if (googleApiClient.isConnected()) {
-            LocationServices.FusedLocationApi.removeLocationUpdates(googleApiClient, this);
-            googleApiClient.disconnect();
+        started = false;
+        if (isConnected()) {
+            numServiceCalls += 2;
+            client.removeLocationUpdates(this);
+            client.disconnect();
         }
         permissionGranted = false;
         locationRequested = false;
         locationStatusOk = false;
         updatesRequested = false;
+        settingsAccuracy = null;
     }
 
     /**
@@ -321,9 +348,62 @@ public class LocationAssistant
         locationRequested = false;
         locationStatusOk = false;
         updatesRequested = false;
+        settingsAccuracy = null;
         acquireLocation();
     }
 
+    /**
+     * Changes the desired accuracy and update interval. If the LocationAssistant is already receiving location
+     * updates, it re-issues its location request right away. Raising the accuracy beyond what the location settings
+     * have been confirmed for (e.g. from {@link Accuracy#LOW} to {@link Accuracy#HIGH}) runs the settings check again,
+     * which may end up in {@link Listener#onNeedLocationSettingsChange()}.
+     *
+     * @param accuracy       the desired accuracy of the location updates
+     * @param updateInterval the interval (in milliseconds) at which the activity can process updates
+     */
+    public void setAccuracy(Accuracy accuracy, long updateInterval) {
+        this.accuracy = accuracy;
+        this.priority = toPriority(accuracy);
+        this.updateInterval = updateInterval;
+        if (locationRequest == null) return;
+        if (started && (settingsAccuracy == null || accuracy.compareTo(settingsAccuracy) < 0)) {
+            // The new request may need providers the old one did not (e.g. GPS), so start over from the settings
+            // check. Until that completes, the previous request keeps running.
+            locationRequested = false;
+            locationStatusOk = false;
+            updatesRequested = false;
+            changeSettings = false;
+            acquireLocation();
+            return;
+        }
+        locationRequest.setPriority(priority);
+        locationRequest.setInterval(updateInterval);
+        locationRequest.setFastestInterval(updateInterval);
+        if (updatesRequested) {
+            // This replaces the previous request for our listener
+            updatesRequested = false;
+            requestLocationUpdates();
+        }
+    }
+
+    /**
+     * Returns the currently desired accuracy.
+     *
+     * @return the desired accuracy of the location updates
+     */
+    public Accuracy getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * Returns the currently desired update interval.
+     *
+     * @return the interval (in milliseconds) at which location updates are requested
+     */
+    public long getUpdateInterval() {
+        return updateInterval;
+    }
+
     /**
      * Returns the best valid location currently available.
      * Usually, this will be the last valid location that was received.
@@ -334,6 +414,38 @@ public class LocationAssistant
         return bestLocation;
     }
 
+    /**
+     * Returns a stream of valid locations for consumers that cannot keep up with
+     * {@link Listener#onNewLocationAvailable(Location)}, e.g. because they process locations on a background thread.
+     * Subscribers request locations at their own pace and choose how to deal with locations that arrive in between.
+     *
+     * @return the stream of valid locations
+     */
+    public LocationStream getLocationStream() {
+        if (locationStream == null)
+            locationStream = new LocationStream();
+        return locationStream;
+    }
+
+    /**
+     * Attaches a TileTracker that will be fed every valid location, e.g. to drive map tile loading.
+     *
+     * @param tileTracker the tile tracker, or {@code null} to detach the current one
+     */
+    public void setTileTracker(TileTracker tileTracker) {
+        this.tileTracker = tileTracker;
+    }
+
+    /**
+     * Attaches a GeocodeCache that will reverse geocode every valid location after it has been delivered to the
+     * listener.
+     *
+     * @param geocodeCache the geocode cache, or {@code null} to detach the current one
+     */
+    public void setGeocodeCache(GeocodeCache geocodeCache) {
+        this.geocodeCache = geocodeCache;
+    }
+
     /**
      * The first time you call this method, it brings up a system dialog asking the user to give location permission to
      * the app. On subsequent calls, if the user has previously declined permission, this method invokes
@@ -388,8 +500,8 @@ public class LocationAssistant
             if (!quiet)
                 Log.i(getClass().getSimpleName(), "Location permission request denied.");
             if (numTimesPermissionDeclined >= 2 && listener != null)
-                listener.onLocationPermissionPermanentlyDeclined(onGoToAppSettingsFromView,
-                        onGoToAppSettingsFromDialog);
+                listener.onLocationPermissionPermanentlyDeclined(getAppSettingsListener(),
+                        getAppSettingsListener());
             return false;
         }
     }
@@ -406,6 +518,7 @@ public class LocationAssistant
         if (resultCode == Activity.RESULT_OK) {
             changeSettings = false;
             locationStatusOk = true;
+            settingsAccuracy = checkingAccuracy;
         }
         acquireLocation();
     }
@@ -439,6 +552,43 @@ public class LocationAssistant
         }
     }
 
+    /**
+     * Returns how long it took from the last call to {@link #start()} until the first valid location update arrived.
+     * This covers the whole acquisition sequence: connecting, permission, settings resolution and the first fix. The
+     * last known location, which may be arbitrarily old, does not count (see {@link #getTimeToLastKnownLocation()}).
+     *
+     * @return the time to first fix (in milliseconds), or -1 if there has not been a valid location update since
+     */
+    public long getTimeToFirstFix() {
+        return timeToFirstFix;
+    }
+
+    /**
+     * Returns how long it took from the last call to {@link #start()} until the last known location was delivered.
+     *
+     * @return the time to the last known location (in milliseconds), or -1 if none was available since
+     */
+    public long getTimeToLastKnownLocation() {
+        return timeToLastKnownLocation;
+    }
+
+    /**
+     * Returns the number of calls to Google Play services (each an IPC call) since the last call to {@link #start()}.
+     *
+     * @return the number of calls issued
+     */
+    public int getNumServiceCalls() {
+        return numServiceCalls;
+    }
+
+    /**
+     * Returns the result of the last location settings check, which can be used to resolve settings issues from a
+     * different context (see {@link LocationService}).
+     */
+    Status getLocationSettingsStatus() {
+        return locationStatus;
+    }
+
     protected void acquireLocation() {
         if (!permissionGranted) checkLocationPermission();
         if (!permissionGranted) {
@@ -470,12 +620,12 @@ public class LocationAssistant
         if (!updatesRequested) {
             requestLocationUpdates();
             // Check back in a few
-            new Handler().postDelayed(new Runnable() {
+            platform.postDelayed(new Runnable() {
                 @Override
                 public void run() {
                     acquireLocation();
                 }
-            }, 10000);
+            }, RECHECK_DELAY);
             return;
         }
 
@@ -486,10 +636,11 @@ public class LocationAssistant
     }
 
     protected void checkInitialLocation() {
-        if (!googleApiClient.isConnected() || !permissionGranted || !locationRequested || !locationStatusOk) return;
+        if (!isConnected() || !permissionGranted || !locationRequested || !locationStatusOk) return;
         try {
-            Location location = LocationServices.FusedLocationApi.getLastLocation(googleApiClient);
-            onLocationChanged(location);
+            numServiceCalls++;
+            Location location = client.getLastLocation();
+            onNewLocation(location, true);
         } catch (SecurityException e) {
             if (!quiet)
                 Log.e(getClass().getSimpleName(), "Error while requesting last location:\n " +
@@ -500,44 +651,77 @@ public class LocationAssistant
         }
     }
 
-    private void checkMockLocations() {
-        // Starting with API level >= 18 we can (partially) rely on .isFromMockProvider()
-        // (http://developer.android.com/reference/android/location/Location.html#isFromMockProvider%28%29)
-        // For API level < 18 we have to check the Settings.Secure flag
-        if (Build.VERSION.SDK_INT < 18 &&
-                !android.provider.Settings.Secure.getString(context.getContentResolver(), android.provider.Settings
-                        .Secure.ALLOW_MOCK_LOCATION).equals("0")) {
-            mockLocationsEnabled = true;
-            if (listener != null)
-                listener.onMockLocationsDetected(onGoToDevSettingsFromView, onGoToDevSettingsFromDialog);
-        } else
-            mockLocationsEnabled = false;
+    private static int toPriority(Accuracy accuracy) {
+        switch (accuracy) {
+            case HIGH:
+                return LocationRequest.PRIORITY_HIGH_ACCURACY;
+            case MEDIUM:
+                return LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+            case LOW:
+                return LocationRequest.PRIORITY_LOW_POWER;
+            case PASSIVE:
+            default:
+                return LocationRequest.PRIORITY_NO_POWER;
+        }
+    }
+
+    private void initialize() {
+        initializing = true;
+        final LocationPlatform.Client existingClient = client;
+        platform.executeInBackground(new Runnable() {
+            @Override
+            public void run() {
+                final LocationPlatform.Client newClient = existingClient != null ? existingClient :
+                        platform.createClient(context, LocationAssistant.this, LocationAssistant.this);
+                final boolean mockLocations = platform.isMockLocationSettingEnabled(context);
+                platform.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        onInitialized(newClient, mockLocations);
+                    }
+                }, 0);
+            }
+        });
+    }
+
+    private void onInitialized(LocationPlatform.Client newClient, boolean mockLocations) {
+        initializing = false;
+        client = newClient;
+        mockLocationsEnabled = mockLocations;
+        if (!started) return;
+        if (mockLocationsEnabled && listener != null)
+            listener.onMockLocationsDetected(getDevSettingsListener(), getDevSettingsListener());
+        numServiceCalls++;
+        client.connect();
+    }
+
+    private boolean isConnected() {
+        return client != null && client.isConnected();
     }
 
     private void checkLocationPermission() {
-        permissionGranted = Build.VERSION.SDK_INT < 23 ||
-                ContextCompat.checkSelfPermission(context,
-                        Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+        permissionGranted = platform.hasLocationPermission(context);
     }
 
     private void requestLocation() {
-        if (!googleApiClient.isConnected() || !permissionGranted) return;
+        if (!isConnected() || !permissionGranted) return;
         locationRequest = LocationRequest.create();
+        checkingAccuracy = accuracy;
         locationRequest.setPriority(priority);
         locationRequest.setInterval(updateInterval);
         locationRequest.setFastestInterval(updateInterval);
         LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder()
                 .addLocationRequest(locationRequest);
         builder.setAlwaysShow(true);
-        LocationServices.SettingsApi.checkLocationSettings(googleApiClient, builder.build())
-                .setResultCallback(onLocationSettingsReceived);
+        numServiceCalls++;
+        client.checkLocationSettings(builder.build(), onLocationSettingsReceived);
     }
 
     private boolean checkLocationAvailability() {
-        if (!googleApiClient.isConnected() || !permissionGranted) return false;
+        if (!isConnected() || !permissionGranted) return false;
         try {
-            LocationAvailability la = LocationServices.FusedLocationApi.getLocationAvailability(googleApiClient);
-            return (la != null && la.isLocationAvailable());
+            numServiceCalls++;
+            return client.isLocationAvailable();
         } catch (SecurityException e) {
             if (!quiet)
                 Log.e(getClass().getSimpleName(), "Error while checking location availability:\n " + e.toString());
@@ -550,12 +734,11 @@ public class LocationAssistant
 
     private void checkProviders() {
         // Do it the old fashioned way
-        LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
-        boolean gps = locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER);
-        boolean network = locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER);
+        boolean gps = platform.isProviderEnabled(context, LocationManager.GPS_PROVIDER);
+        boolean network = platform.isProviderEnabled(context, LocationManager.NETWORK_PROVIDER);
         if (gps || network) return;
         if (listener != null)
-            listener.onFallBackToSystemSettings(onGoToLocationSettingsFromView, onGoToLocationSettingsFromDialog);
+            listener.onFallBackToSystemSettings(getLocationSettingsListener(), getLocationSettingsListener());
         else if (!quiet)
             Log.e(getClass().getSimpleName(), "Location providers need to be enabled, but no listener is " +
                     "registered! Specify a valid listener when constructing " + getClass().getSimpleName() +
@@ -563,9 +746,10 @@ public class LocationAssistant
     }
 
     private void requestLocationUpdates() {
-        if (!googleApiClient.isConnected() || !permissionGranted || !locationRequested) return;
+        if (!isConnected() || !permissionGranted || !locationRequested) return;
         try {
-            LocationServices.FusedLocationApi.requestLocationUpdates(googleApiClient, locationRequest, this);
+            numServiceCalls++;
+            client.requestLocationUpdates(locationRequest, this);
             updatesRequested = true;
         } catch (SecurityException e) {
             if (!quiet)
@@ -577,89 +761,45 @@ public class LocationAssistant
         }
     }
 
-    private DialogInterface.OnClickListener onGoToLocationSettingsFromDialog = new DialogInterface.OnClickListener() {
-        @Override
-        public void onClick(DialogInterface dialog, int which) {
-            if (activity != null) {
-                Intent intent = new Intent(android.provider.Settings.ACTION_LOCATION_SOURCE_SETTINGS);
-                activity.startActivity(intent);
-            } else if (!quiet)
-                Log.e(getClass().getSimpleName(), "Need to launch an intent, but no activity is registered! " +
-                        "Specify a valid activity when constructing " + getClass().getSimpleName() +
-                        " or register it explicitly with register().");
-        }
-    };
+    private SettingsClickListener getLocationSettingsListener() {
+        if (onGoToLocationSettings == null)
+            onGoToLocationSettings = new AssistantSettingsClickListener(Settings.ACTION_LOCATION_SOURCE_SETTINGS,
+                    false);
+        return onGoToLocationSettings;
+    }
 
-    private View.OnClickListener onGoToLocationSettingsFromView = new View.OnClickListener() {
-        @Override
-        public void onClick(View v) {
-            if (activity != null) {
-                Intent intent = new Intent(android.provider.Settings.ACTION_LOCATION_SOURCE_SETTINGS);
-                activity.startActivity(intent);
-            } else if (!quiet)
-                Log.e(getClass().getSimpleName(), "Need to launch an intent, but no activity is registered! " +
-                        "Specify a valid activity when constructing " + getClass().getSimpleName() +
-                        " or register it explicitly with register().");
-        }
-    };
+    private SettingsClickListener getDevSettingsListener() {
+        if (onGoToDevSettings == null)
+            onGoToDevSettings = new AssistantSettingsClickListener(Settings.ACTION_APPLICATION_DEVELOPMENT_SETTINGS,
+                    false);
+        return onGoToDevSettings;
+    }
 
-    private DialogInterface.OnClickListener onGoToDevSettingsFromDialog = new DialogInterface.OnClickListener() {
-        @Override
-        public void onClick(DialogInterface dialog, int which) {
-            if (activity != null) {
-                Intent intent = new Intent(android.provider.Settings.ACTION_APPLICATION_DEVELOPMENT_SETTINGS);
-                activity.startActivity(intent);
-            } else if (!quiet)
-                Log.e(getClass().getSimpleName(), "Need to launch an intent, but no activity is registered! " +
-                        "Specify a valid activity when constructing " + getClass().getSimpleName() +
-                        " or register it explicitly with register().");
-        }
-    };
+    private SettingsClickListener getAppSettingsListener() {
+        if (onGoToAppSettings == null)
+            onGoToAppSettings = new AssistantSettingsClickListener(Settings.ACTION_APPLICATION_DETAILS_SETTINGS, true);
+        return onGoToAppSettings;
+    }
 
-    private View.OnClickListener onGoToDevSettingsFromView = new View.OnClickListener() {
-        @Override
-        public void onClick(View v) {
-            if (activity != null) {
-                Intent intent = new Intent(android.provider.Settings.ACTION_APPLICATION_DEVELOPMENT_SETTINGS);
-                activity.startActivity(intent);
-            } else if (!quiet)
-                Log.e(getClass().getSimpleName(), "Need to launch an intent, but no activity is registered! " +
-                        "Specify a valid activity when constructing " + getClass().getSimpleName() +
-                        " or register it explicitly with register().");
+    private class AssistantSettingsClickListener extends SettingsClickListener {
+        AssistantSettingsClickListener(String action, boolean forThisApp) {
+            super(action, forThisApp);
         }
-    };
 
-    private DialogInterface.OnClickListener onGoToAppSettingsFromDialog = new DialogInterface.OnClickListener() {
         @Override
-        public void onClick(DialogInterface dialog, int which) {
-            if (activity != null) {
-                Intent intent = new Intent();
-                intent.setAction(Settings.ACTION_APPLICATION_DETAILS_SETTINGS);
-                Uri uri = Uri.fromParts("package", activity.getPackageName(), null);
-                intent.setData(uri);
-                activity.startActivity(intent);
-            } else if (!quiet)
-                Log.e(getClass().getSimpleName(), "Need to launch an intent, but no activity is registered! " +
-                        "Specify a valid activity when constructing " + getClass().getSimpleName() +
-                        " or register it explicitly with register().");
+        Activity getActivity() {
+            return activity;
         }
-    };
 
-    private View.OnClickListener onGoToAppSettingsFromView = new View.OnClickListener() {
         @Override
-        public void onClick(View v) {
-            if (activity != null) {
-                Intent intent = new Intent();
-                intent.setAction(Settings.ACTION_APPLICATION_DETAILS_SETTINGS);
-                Uri uri = Uri.fromParts("package", activity.getPackageName(), null);
-                intent.setData(uri);
-                activity.startActivity(intent);
-            } else if (!quiet)
-                Log.e(getClass().getSimpleName(), "Need to launch an intent, but no activity is registered! " +
-                        "Specify a valid activity when constructing " + getClass().getSimpleName() +
-                        " or register it explicitly with register().");
+        void onNoActivity() {
+            if (!quiet)
+                Log.e(LocationAssistant.this.getClass().getSimpleName(), "Need to launch an intent, but no " +
+                        "activity is registered! Specify a valid activity when constructing " +
+                        LocationAssistant.this.getClass().getSimpleName() + " or register it explicitly with " +
+                        "register().");
         }
-    };
+    }
 
     private boolean isLocationPlausible(Location location) {
         if (location == null) return false;
@@ -693,6 +833,10 @@ public class LocationAssistant
 
     @Override
     public void onLocationChanged(Location location) {
+        onNewLocation(location, false);
+    }
+
+    private void onNewLocation(Location location, boolean lastKnown) {
         if (location == null) return;
         boolean plausible = isLocationPlausible(location);
         if (verbose && !quiet)
@@ -700,18 +844,33 @@ public class LocationAssistant
                     (plausible ? " -> plausible" : " -> not plausible"));
 
         if (!allowMockLocations && !plausible) {
-            if (listener != null) listener.onMockLocationsDetected(onGoToDevSettingsFromView,
-                    onGoToDevSettingsFromDialog);
+            if (listener != null) listener.onMockLocationsDetected(getDevSettingsListener(),
+                    getDevSettingsListener());
             return;
         }
 
         bestLocation = location;
+        if (lastKnown) {
+            if (timeToLastKnownLocation < 0 && started)
+                timeToLastKnownLocation = platform.elapsedRealtime() - startTime;
+        } else if (timeToFirstFix < 0 && started) {
+            timeToFirstFix = platform.elapsedRealtime() - startTime;
+            if (verbose && !quiet)
+                Log.i(getClass().getSimpleName(), "First location after " + timeToFirstFix + "ms and " +
+                        numServiceCalls + " calls to Google Play services.");
+        }
+        if (locationStream != null)
+            locationStream.publish(location);
+        if (tileTracker != null)
+            tileTracker.onLocation(location);
         if (listener != null)
             listener.onNewLocationAvailable(location);
         else if (!quiet)
             Log.w(getClass().getSimpleName(), "New location is available, but no listener is registered!\n" +
                     "Specify a valid listener when constructing " + getClass().getSimpleName() +
                     " or register it explicitly with register().");
+        if (geocodeCache != null)
+            geocodeCache.lookup(location);
     }
 
     @Override
@@ -732,14 +891,17 @@ public class LocationAssistant
             switch (locationStatus.getStatusCode()) {
                 case LocationSettingsStatusCodes.SUCCESS:
                     locationStatusOk = true;
+                    settingsAccuracy = checkingAccuracy;
                     checkInitialLocation();
                     break;
                 case LocationSettingsStatusCodes.RESOLUTION_REQUIRED:
                     locationStatusOk = false;
+                    settingsAccuracy = null;
                     changeSettings = true;
                     break;
                 case LocationSettingsStatusCodes.SETTINGS_CHANGE_UNAVAILABLE:
                     locationStatusOk = false;
+                    settingsAccuracy = null;
                     break;
             }
             acquireLocation();
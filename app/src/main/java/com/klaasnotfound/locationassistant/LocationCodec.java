@@ -0,0 +1,351 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.location.Location;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * A compact binary encoding for sequences of locations, e.g. for storing or uploading recorded tracks.
+ * <p>
+ * Latitude and longitude are quantized to 1e-7 degrees (roughly 1cm) and time to milliseconds. Each fix is written as
+ * a flag byte followed by the zig-zag varint deltas of latitude, longitude and time relative to the previous fix.
+ * Accuracy (decimeters), altitude (delta in decimeters), speed (cm/s) and bearing (tenths of a degree) are only
+ * written if present, as indicated by the flag byte. A typical fix of a continuous track takes 8-14 bytes.
+ * <p>
+ * Encoder and decoder are stateful (they remember the previous fix) and do not allocate while encoding or decoding.
+ * Their state only advances once a fix has been completely written or read, so a full buffer, a failed write or a
+ * truncated input leaves them ready to process the same fix again. They are not thread-safe.
+ */
+public final class LocationCodec {
+
+    private static final int FLAG_ACCURACY = 1;
+    private static final int FLAG_ALTITUDE = 1 << 1;
+    private static final int FLAG_SPEED = 1 << 2;
+    private static final int FLAG_BEARING = 1 << 3;
+
+    private static final double COORDINATE_SCALE = 1e7;
+    private static final int MAX_FIX_BYTES = 1 + 7 * 10;
+
+    private LocationCodec() {
+    }
+
+    /**
+     * Writes locations in the compact binary format.
+     */
+    public static final class Encoder {
+
+        private final byte[] scratch = new byte[MAX_FIX_BYTES];
+        private int prevLat;
+        private int prevLon;
+        private long prevTime;
+        private int prevAlt;
+        private int nextLat;
+        private int nextLon;
+        private long nextTime;
+        private int nextAlt;
+        private long numFixes;
+        private long numBytes;
+
+        /**
+         * Encodes a location into the given buffer. If the buffer does not have enough space left, nothing is written
+         * and the location can be encoded again once there is.
+         *
+         * @param location the location to encode
+         * @param out      the buffer to write to
+         * @return the number of bytes written
+         * @throws java.nio.BufferOverflowException if the buffer does not have enough space left
+         */
+        public int encode(Location location, ByteBuffer out) {
+            int n = encode(location);
+            out.put(scratch, 0, n);
+            commit(n);
+            return n;
+        }
+
+        /**
+         * Encodes a location into the given stream.
+         * You should use a buffered stream, as every call writes a handful of bytes.
+         *
+         * @param location the location to encode
+         * @param out      the stream to write to
+         * @return the number of bytes written
+         * @throws IOException if the stream could not be written to
+         */
+        public int encode(Location location, OutputStream out) throws IOException {
+            int n = encode(location);
+            out.write(scratch, 0, n);
+            commit(n);
+            return n;
+        }
+
+        /**
+         * Forgets the previous fix, so the next location will be encoded as the start of a new sequence.
+         */
+        public void reset() {
+            prevLat = 0;
+            prevLon = 0;
+            prevTime = 0;
+            prevAlt = 0;
+        }
+
+        /**
+         * Returns the number of locations encoded so far.
+         *
+         * @return the number of encoded locations
+         */
+        public long getNumFixes() {
+            return numFixes;
+        }
+
+        /**
+         * Returns the number of bytes written so far.
+         *
+         * @return the number of bytes written
+         */
+        public long getNumBytes() {
+            return numBytes;
+        }
+
+        // Only encodes into the scratch buffer - the previous fix is updated by commit() once the bytes are written,
+        // so a failed write can be retried (or the buffer flushed) without corrupting the following deltas
+        private int encode(Location location) {
+            nextLat = (int) Math.round(location.getLatitude() * COORDINATE_SCALE);
+            nextLon = (int) Math.round(location.getLongitude() * COORDINATE_SCALE);
+            nextTime = location.getTime();
+            nextAlt = prevAlt;
+
+            int flags = 0;
+            if (location.hasAccuracy()) flags |= FLAG_ACCURACY;
+            if (location.hasAltitude()) flags |= FLAG_ALTITUDE;
+            if (location.hasSpeed()) flags |= FLAG_SPEED;
+            if (location.hasBearing()) flags |= FLAG_BEARING;
+
+            int pos = 0;
+            scratch[pos++] = (byte) flags;
+            pos = writeVarint(scratch, pos, zigZag((long) nextLat - prevLat));
+            pos = writeVarint(scratch, pos, zigZag((long) nextLon - prevLon));
+            pos = writeVarint(scratch, pos, zigZag(nextTime - prevTime));
+            if ((flags & FLAG_ACCURACY) != 0)
+                pos = writeVarint(scratch, pos, Math.max(0, Math.round(location.getAccuracy() * 10)));
+            if ((flags & FLAG_ALTITUDE) != 0) {
+                nextAlt = (int) Math.round(location.getAltitude() * 10);
+                pos = writeVarint(scratch, pos, zigZag((long) nextAlt - prevAlt));
+            }
+            if ((flags & FLAG_SPEED) != 0)
+                pos = writeVarint(scratch, pos, Math.max(0, Math.round(location.getSpeed() * 100)));
+            if ((flags & FLAG_BEARING) != 0)
+                pos = writeVarint(scratch, pos, Math.max(0, Math.round(location.getBearing() * 10)));
+            return pos;
+        }
+
+        private void commit(int n) {
+            prevLat = nextLat;
+            prevLon = nextLon;
+            prevTime = nextTime;
+            prevAlt = nextAlt;
+            numFixes++;
+            numBytes += n;
+        }
+    }
+
+    /**
+     * Reads locations from the compact binary format.
+     */
+    public static final class Decoder {
+
+        private final String provider;
+        private ByteBuffer sourceBuffer;
+        private InputStream sourceStream;
+        private int prevLat;
+        private int prevLon;
+        private long prevTime;
+        private int prevAlt;
+        private int bytesRead;
+        private long numFixes;
+        private long numBytes;
+
+        /**
+         * Constructs a decoder.
+         *
+         * @param provider the provider name to set on decoded locations
+         */
+        public Decoder(String provider) {
+            this.provider = provider;
+        }
+
+        /**
+         * Decodes the next location from the given buffer into an existing Location object. If the buffer ends in the
+         * middle of a location, its position is restored, so decoding can resume once more bytes have been appended.
+         *
+         * @param in  the buffer to read from
+         * @param out the location to overwrite with the decoded values
+         * @return {@code true} if a location was decoded, {@code false} if the buffer has no bytes left
+         * @throws java.nio.BufferUnderflowException if the buffer ends in the middle of a location
+         * @throws IllegalArgumentException          if the buffer does not contain a valid location at its position
+         *                                           (the position is restored as well)
+         */
+        public boolean decode(ByteBuffer in, Location out) {
+            if (!in.hasRemaining()) return false;
+            int start = in.position();
+            sourceBuffer = in;
+            try {
+                decode(out);
+            } catch (BufferUnderflowException e) {
+                in.position(start);
+                throw e;
+            } catch (IOException e) {
+                // The buffer itself cannot fail, so this is corrupt data
+                in.position(start);
+                throw new IllegalArgumentException(e.getMessage(), e);
+            } finally {
+                sourceBuffer = null;
+            }
+            return true;
+        }
+
+        /**
+         * Decodes the next location from the given stream into an existing Location object.
+         * You should use a buffered stream, as this method reads one byte at a time. If the stream ends in the middle
+         * of a location, the decoder's state is left as it was, but the bytes that were read are gone - unlike
+         * {@link #decode(ByteBuffer, Location)}, decoding cannot simply be retried.
+         *
+         * @param in  the stream to read from
+         * @param out the location to overwrite with the decoded values
+         * @return {@code true} if a location was decoded, {@code false} if the stream has ended
+         * @throws IOException if the stream could not be read, ends in the middle of a location or contains malformed
+         *                     data
+         */
+        public boolean decode(InputStream in, Location out) throws IOException {
+            sourceStream = in;
+            try {
+                return decode(out);
+            } finally {
+                sourceStream = null;
+            }
+        }
+
+        /**
+         * Forgets the previous fix, so the next location will be decoded as the start of a new sequence.
+         */
+        public void reset() {
+            prevLat = 0;
+            prevLon = 0;
+            prevTime = 0;
+            prevAlt = 0;
+        }
+
+        /**
+         * Returns the number of locations decoded so far.
+         *
+         * @return the number of decoded locations
+         */
+        public long getNumFixes() {
+            return numFixes;
+        }
+
+        /**
+         * Returns the number of bytes consumed by the decoded locations so far.
+         *
+         * @return the number of bytes read
+         */
+        public long getNumBytes() {
+            return numBytes;
+        }
+
+        // Reads the whole fix into locals before touching the output or the previous fix, so that running out of
+        // input halfway through leaves both unchanged
+        private boolean decode(Location out) throws IOException {
+            bytesRead = 0;
+            int flags = readByte(false);
+            if (flags < 0) return false;
+            int lat = prevLat + (int) unZigZag(readVarint());
+            int lon = prevLon + (int) unZigZag(readVarint());
+            long time = prevTime + unZigZag(readVarint());
+            long accuracy = (flags & FLAG_ACCURACY) != 0 ? readVarint() : 0;
+            int alt = (flags & FLAG_ALTITUDE) != 0 ? prevAlt + (int) unZigZag(readVarint()) : prevAlt;
+            long speed = (flags & FLAG_SPEED) != 0 ? readVarint() : 0;
+            long bearing = (flags & FLAG_BEARING) != 0 ? readVarint() : 0;
+
+            out.reset();
+            out.setProvider(provider);
+            out.setLatitude(lat / COORDINATE_SCALE);
+            out.setLongitude(lon / COORDINATE_SCALE);
+            out.setTime(time);
+            if ((flags & FLAG_ACCURACY) != 0) out.setAccuracy(accuracy / 10f);
+            if ((flags & FLAG_ALTITUDE) != 0) out.setAltitude(alt / 10.0);
+            if ((flags & FLAG_SPEED) != 0) out.setSpeed(speed / 100f);
+            if ((flags & FLAG_BEARING) != 0) out.setBearing(bearing / 10f);
+
+            prevLat = lat;
+            prevLon = lon;
+            prevTime = time;
+            prevAlt = alt;
+            numFixes++;
+            numBytes += bytesRead;
+            return true;
+        }
+
+        private int readByte(boolean required) throws IOException {
+            int b;
+            if (sourceBuffer != null)
+                b = sourceBuffer.get() & 0xff;
+            else {
+                b = sourceStream.read();
+                if (b < 0) {
+                    if (required) throw new EOFException("Stream ended in the middle of a location.");
+                    return -1;
+                }
+            }
+            bytesRead++;
+            return b;
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte(true);
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint.");
+        }
+    }
+
+    private static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unZigZag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static int writeVarint(byte[] buf, int pos, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+}
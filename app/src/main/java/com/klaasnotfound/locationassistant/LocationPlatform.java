@@ -0,0 +1,177 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.content.ContextCompat;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.location.LocationAvailability;
+import com.google.android.gms.location.LocationListener;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.LocationSettingsRequest;
+import com.google.android.gms.location.LocationSettingsResult;
+
+/**
+ * Everything the LocationAssistant needs from Google Play services and the framework: the location client, the clock,
+ * the main and background threads and the permission, mock location and provider checks.
+ * <p>
+ * This default implementation talks to the real thing. Tests override it to run the LocationAssistant on a virtual
+ * clock against scripted services.
+ */
+class LocationPlatform {
+
+    /**
+     * A connection to the fused location provider. Every method except {@link #isConnected()} is an IPC call.
+     */
+    interface Client {
+        void connect();
+
+        void disconnect();
+
+        boolean isConnected();
+
+        Location getLastLocation();
+
+        boolean isLocationAvailable();
+
+        void checkLocationSettings(LocationSettingsRequest request, ResultCallback<LocationSettingsResult> callback);
+
+        void requestLocationUpdates(LocationRequest request, LocationListener listener);
+
+        void removeLocationUpdates(LocationListener listener);
+    }
+
+    private Handler handler;
+
+    /**
+     * Creates a (not yet connected) client. Called on a background thread.
+     */
+    Client createClient(Context context, GoogleApiClient.ConnectionCallbacks callbacks,
+                        GoogleApiClient.OnConnectionFailedListener failedListener) {
+        return new PlayServicesClient(new GoogleApiClient.Builder(context)
+                .addConnectionCallbacks(callbacks)
+                .addOnConnectionFailedListener(failedListener)
+                .addApi(LocationServices.API)
+                .build());
+    }
+
+    long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Runs a task on the main thread after the given delay.
+     */
+    void postDelayed(Runnable task, long delay) {
+        if (handler == null)
+            handler = new Handler(Looper.getMainLooper());
+        handler.postDelayed(task, delay);
+    }
+
+    /**
+     * Runs a task on a background thread.
+     */
+    void executeInBackground(Runnable task) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(task);
+    }
+
+    boolean hasLocationPermission(Context context) {
+        return Build.VERSION.SDK_INT < 23 ||
+                ContextCompat.checkSelfPermission(context,
+                        Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Returns whether or not mock locations are enabled in the developer settings. Called on a background thread.
+     */
+    boolean isMockLocationSettingEnabled(Context context) {
+        // Starting with API level >= 18 we can (partially) rely on .isFromMockProvider()
+        // (http://developer.android.com/reference/android/location/Location.html#isFromMockProvider%28%29)
+        // For API level < 18 we have to check the Settings.Secure flag
+        return Build.VERSION.SDK_INT < 18 &&
+                !"0".equals(android.provider.Settings.Secure.getString(context.getContentResolver(),
+                        android.provider.Settings.Secure.ALLOW_MOCK_LOCATION));
+    }
+
+    boolean isProviderEnabled(Context context, String provider) {
+        LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        return locationManager.isProviderEnabled(provider);
+    }
+
+    private static class PlayServicesClient implements Client {
+
+        private final GoogleApiClient googleApiClient;
+
+        PlayServicesClient(GoogleApiClient googleApiClient) {
+            this.googleApiClient = googleApiClient;
+        }
+
+        @Override
+        public void connect() {
+            googleApiClient.connect();
+        }
+
+        @Override
+        public void disconnect() {
+            googleApiClient.disconnect();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return googleApiClient.isConnected();
+        }
+
+        @Override
+        public Location getLastLocation() {
+            return LocationServices.FusedLocationApi.getLastLocation(googleApiClient);
+        }
+
+        @Override
+        public boolean isLocationAvailable() {
+            LocationAvailability la = LocationServices.FusedLocationApi.getLocationAvailability(googleApiClient);
+            return la != null && la.isLocationAvailable();
+        }
+
+        @Override
+        public void checkLocationSettings(LocationSettingsRequest request,
+                                          ResultCallback<LocationSettingsResult> callback) {
+            LocationServices.SettingsApi.checkLocationSettings(googleApiClient, request).setResultCallback(callback);
+        }
+
+        @Override
+        public void requestLocationUpdates(LocationRequest request, LocationListener listener) {
+            LocationServices.FusedLocationApi.requestLocationUpdates(googleApiClient, request, listener);
+        }
+
+        @Override
+        public void removeLocationUpdates(LocationListener listener) {
+            LocationServices.FusedLocationApi.removeLocationUpdates(googleApiClient, listener);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.location.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A ring buffer of locations in a memory-mapped file, shared between the processes of an app.
+ * <p>
+ * A single writer (the {@link LocationService}) assigns each location a sequence number, starting at 1, and stores it
+ * in slot {@code sequence % capacity}, followed by a CRC-32 of the sequence number and the location. Only then does it
+ * publish the new sequence number in the header. Java monitors do not order memory accesses across processes, so
+ * readers do not rely on the order in which the writer's stores become visible: they copy a slot and accept it only if
+ * the checksum matches and the slot holds the expected sequence number. A slot that is being written, or whose
+ * contents are not visible yet, fails the check and is retried later. If a reader falls behind by more than the
+ * capacity, it skips ahead and counts the missed locations.
+ * <p>
+ * The file lives in internal storage, so the kernel periodically writes the dirty pages back to flash (typically every
+ * 5 to 30 seconds). As 64 slots share a 4 KiB page, this amounts to about one page per writeback interval at the usual
+ * update rates, which is negligible for wear and battery, but not free. An ashmem region would avoid the writeback,
+ * but before API 27 its file descriptor cannot be obtained and mapped through public APIs. Keep the capacity small.
+ */
+class LocationRing {
+
+    private static final int MAGIC = 0x4c4f4352; // "LOCR"
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+
+    // Header layout
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_CAPACITY = 4;
+    private static final int OFF_EPOCH = 8;
+    private static final int OFF_WRITE_SEQ = 16;
+
+    // Slot layout
+    private static final int OFF_SEQ = 0;
+    private static final int OFF_TIME = 8;
+    private static final int OFF_LAT = 16;
+    private static final int OFF_LON = 24;
+    private static final int OFF_ALT = 32;
+    private static final int OFF_ACCURACY = 40;
+    private static final int OFF_SPEED = 44;
+    private static final int OFF_BEARING = 48;
+    private static final int OFF_FLAGS = 52;
+    private static final int OFF_CRC = 56;
+
+    private static final int FLAG_ACCURACY = 1;
+    private static final int FLAG_ALTITUDE = 1 << 1;
+    private static final int FLAG_SPEED = 1 << 2;
+    private static final int FLAG_BEARING = 1 << 3;
+    private static final int FLAG_MOCK = 1 << 4;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long epoch;
+
+    // Used to copy whole slots in and out of the mapping (only guarded against threads of the same process)
+    private final ByteBuffer view;
+    private final byte[] scratch = new byte[SLOT_SIZE];
+    private final ByteBuffer slot = ByteBuffer.wrap(scratch);
+    private final CRC32 crc = new CRC32();
+
+    private LocationRing(RandomAccessFile file, MappedByteBuffer buffer, int capacity, long epoch) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.epoch = epoch;
+        view = buffer.duplicate();
+    }
+
+    /**
+     * Returns the file that backs the ring of the given context's app.
+     */
+    static File getFile(android.content.Context context) {
+        return new File(context.getFilesDir(), "location_ring");
+    }
+
+    /**
+     * Creates (or recreates) a ring for writing. Readers that were attached to a previous ring will notice the new
+     * epoch and start over.
+     */
+    static LocationRing create(File path, int capacity) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            int size = HEADER_SIZE + capacity * SLOT_SIZE;
+            file.setLength(size);
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            // Zeroed slots never pass the checksum test
+            for (int i = 0; i < capacity * SLOT_SIZE; i += 8)
+                buffer.putLong(HEADER_SIZE + i, 0);
+            long epoch = System.currentTimeMillis();
+            buffer.putInt(OFF_CAPACITY, capacity);
+            buffer.putLong(OFF_EPOCH, epoch);
+            buffer.putLong(OFF_WRITE_SEQ, 0);
+            buffer.putInt(OFF_MAGIC, MAGIC);
+            return new LocationRing(file, buffer, capacity, epoch);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Attaches to an existing ring for reading.
+     *
+     * @return the ring, or {@code null} if it does not exist (yet)
+     */
+    static LocationRing open(File path) throws IOException {
+        if (!path.exists() || path.length() < HEADER_SIZE) return null;
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            int capacity = buffer.getInt(OFF_CAPACITY);
+            if (buffer.getInt(OFF_MAGIC) != MAGIC || capacity <= 0 ||
+                    file.length() < HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+                file.close();
+                return null;
+            }
+            return new LocationRing(file, buffer, capacity, buffer.getLong(OFF_EPOCH));
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns whether or not the ring file has been recreated by the writer since this instance attached to it.
+     */
+    boolean isStale() {
+        return buffer.getLong(OFF_EPOCH) != epoch;
+    }
+
+    /**
+     * Returns the sequence number of the most recently written location (0 if none). The location itself may not be
+     * readable yet, see {@link #read(long, Location)}.
+     */
+    long getWriteSequence() {
+        return buffer.getLong(OFF_WRITE_SEQ);
+    }
+
+    /**
+     * Appends a location. Must only be called by the single writer.
+     */
+    synchronized void write(Location location) {
+        long seq = buffer.getLong(OFF_WRITE_SEQ) + 1;
+        int flags = 0;
+        if (location.hasAccuracy()) flags |= FLAG_ACCURACY;
+        if (location.hasAltitude()) flags |= FLAG_ALTITUDE;
+        if (location.hasSpeed()) flags |= FLAG_SPEED;
+        if (location.hasBearing()) flags |= FLAG_BEARING;
+        if (android.os.Build.VERSION.SDK_INT >= 18 && location.isFromMockProvider()) flags |= FLAG_MOCK;
+        slot.putLong(OFF_SEQ, seq);
+        slot.putLong(OFF_TIME, location.getTime());
+        slot.putDouble(OFF_LAT, location.getLatitude());
+        slot.putDouble(OFF_LON, location.getLongitude());
+        slot.putDouble(OFF_ALT, location.getAltitude());
+        slot.putFloat(OFF_ACCURACY, location.getAccuracy());
+        slot.putFloat(OFF_SPEED, location.getSpeed());
+        slot.putFloat(OFF_BEARING, location.getBearing());
+        slot.putInt(OFF_FLAGS, flags);
+        slot.putInt(OFF_CRC, checksum());
+
+        view.position(HEADER_SIZE + (int) (seq % capacity) * SLOT_SIZE);
+        view.put(scratch);
+        buffer.putLong(OFF_WRITE_SEQ, seq);
+    }
+
+    /**
+     * Reads the location with the given sequence number into an existing Location object. A reader that fails to read
+     * a sequence number it has seen in {@link #getWriteSequence()} can tell from the distance to the current write
+     * sequence whether the slot has been overwritten (at least {@code capacity - 1} behind) or is not visible yet.
+     *
+     * @return {@code true} if the location was read, {@code false} if its slot holds another (or a torn) location
+     */
+    synchronized boolean read(long seq, Location out) {
+        view.position(HEADER_SIZE + (int) (seq % capacity) * SLOT_SIZE);
+        view.get(scratch);
+        if (slot.getLong(OFF_SEQ) != seq || slot.getInt(OFF_CRC) != checksum()) return false;
+
+        int flags = slot.getInt(OFF_FLAGS);
+        out.reset();
+        out.setProvider((flags & FLAG_MOCK) != 0 ? "mock" : "fused");
+        out.setTime(slot.getLong(OFF_TIME));
+        out.setLatitude(slot.getDouble(OFF_LAT));
+        out.setLongitude(slot.getDouble(OFF_LON));
+        if ((flags & FLAG_ALTITUDE) != 0) out.setAltitude(slot.getDouble(OFF_ALT));
+        if ((flags & FLAG_ACCURACY) != 0) out.setAccuracy(slot.getFloat(OFF_ACCURACY));
+        if ((flags & FLAG_SPEED) != 0) out.setSpeed(slot.getFloat(OFF_SPEED));
+        if ((flags & FLAG_BEARING) != 0) out.setBearing(slot.getFloat(OFF_BEARING));
+        return true;
+    }
+
+    void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // Nothing we can do
+        }
+    }
+
+    private int checksum() {
+        crc.reset();
+        crc.update(scratch, 0, OFF_CRC);
+        return (int) crc.getValue();
+    }
+}
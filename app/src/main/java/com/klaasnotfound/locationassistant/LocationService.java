@@ -0,0 +1,235 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.app.Service;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+import android.view.View;
+
+import java.io.IOException;
+
+/**
+ * A foreground service that hosts a single LocationAssistant on behalf of all processes of an app.
+ * <p>
+ * Valid locations are published into a {@link LocationRing}, which clients in other processes read without any
+ * Binder calls. The Binder (a {@link Messenger}) only carries control messages: subscribing, changing the accuracy and
+ * routing permission and settings prompts to a registered activity. Use {@link LocationServiceClient} to talk to the
+ * service.
+ */
+public class LocationService extends Service implements LocationAssistant.Listener {
+
+    // Messages from clients
+    static final int MSG_SUBSCRIBE = 1;
+    static final int MSG_UNSUBSCRIBE = 2;
+    static final int MSG_SET_ACCURACY = 3;
+    static final int MSG_REGISTER_PROMPTS = 4;
+    static final int MSG_UNREGISTER_PROMPTS = 5;
+    static final int MSG_RETRY = 6;
+    static final int MSG_PERMISSION_DENIED = 7;
+
+    // Messages to the registered prompt handler
+    static final int MSG_NEED_PERMISSION = 101;
+    static final int MSG_PERMISSION_PERMANENTLY_DECLINED = 102;
+    static final int MSG_NEED_SETTINGS_CHANGE = 103;
+    static final int MSG_FALL_BACK_TO_SYSTEM_SETTINGS = 104;
+    static final int MSG_MOCK_LOCATIONS_DETECTED = 105;
+    static final int MSG_ERROR = 106;
+
+    static final String KEY_UPDATE_INTERVAL = "updateInterval";
+    static final String KEY_STATUS = "status";
+    static final String KEY_MESSAGE = "message";
+
+    private static final int RING_CAPACITY = 256;
+    private static final int NOTIFICATION_ID = 0x10ca;
+
+    private final Messenger messenger = new Messenger(new Handler(new Handler.Callback() {
+        @Override
+        public boolean handleMessage(Message msg) {
+            return onClientMessage(msg);
+        }
+    }));
+
+    private LocationAssistant assistant;
+    private LocationRing ring;
+    private Messenger promptMessenger;
+    private int numSubscribers;
+    private boolean promptPending;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        assistant = new LocationAssistant(this, this, LocationAssistant.Accuracy.HIGH, 5000, false);
+        try {
+            ring = LocationRing.create(LocationRing.getFile(this), RING_CAPACITY);
+        } catch (IOException e) {
+            Log.e(getClass().getSimpleName(), "Error while creating the location ring:\n" + e.toString());
+        }
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return messenger.getBinder();
+    }
+
+    @Override
+    public boolean onUnbind(Intent intent) {
+        // All clients are gone, even those that did not unsubscribe properly
+        numSubscribers = 0;
+        promptMessenger = null;
+        stopTracking();
+        return false;
+    }
+
+    @Override
+    public void onDestroy() {
+        stopTracking();
+        if (ring != null) ring.close();
+        super.onDestroy();
+    }
+
+    private boolean onClientMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_SUBSCRIBE:
+                if (numSubscribers++ == 0) startTracking();
+                return true;
+            case MSG_UNSUBSCRIBE:
+                if (numSubscribers > 0 && --numSubscribers == 0) stopTracking();
+                return true;
+            case MSG_SET_ACCURACY:
+                assistant.setAccuracy(LocationAssistant.Accuracy.values()[msg.arg1],
+                        msg.getData().getLong(KEY_UPDATE_INTERVAL));
+                return true;
+            case MSG_REGISTER_PROMPTS:
+                promptMessenger = msg.replyTo;
+                // Give the new prompt handler a chance to resolve whatever is pending. Clients register on every
+                // onResume(), so leave a working subscription alone - resetting it costs several Play services calls.
+                if (numSubscribers > 0 && promptPending) retry();
+                return true;
+            case MSG_UNREGISTER_PROMPTS:
+                promptMessenger = null;
+                return true;
+            case MSG_RETRY:
+                if (numSubscribers > 0) retry();
+                return true;
+            case MSG_PERMISSION_DENIED:
+                // Lets the assistant count the denial and escalate to "permanently declined" when appropriate
+                assistant.onPermissionsUpdated(LocationAssistant.REQUEST_LOCATION_PERMISSION,
+                        new int[]{PackageManager.PERMISSION_DENIED});
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void startTracking() {
+        startForeground(NOTIFICATION_ID, new NotificationCompat.Builder(this)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.serviceNotificationTitle))
+                .setContentText(getString(R.string.serviceNotificationText))
+                .setOngoing(true)
+                .build());
+        assistant.start();
+    }
+
+    private void stopTracking() {
+        assistant.stop();
+        promptPending = false;
+        stopForeground(true);
+    }
+
+    private void retry() {
+        // The assistant prompts again if the issue has not been resolved in the meantime
+        promptPending = false;
+        assistant.reset();
+    }
+
+    private void sendPrompt(int what, int arg1, Bundle data) {
+        if (promptMessenger == null) {
+            Log.w(getClass().getSimpleName(), "Need to prompt the user, but no activity is registered! " +
+                    "Register one with " + LocationServiceClient.class.getSimpleName() + ".register().");
+            return;
+        }
+        Message msg = Message.obtain(null, what, arg1, 0);
+        if (data != null) msg.setData(data);
+        try {
+            promptMessenger.send(msg);
+        } catch (RemoteException e) {
+            // The registered activity's process has died
+            promptMessenger = null;
+        }
+    }
+
+    @Override
+    public void onNeedLocationPermission() {
+        promptPending = true;
+        sendPrompt(MSG_NEED_PERMISSION, 0, null);
+    }
+
+    @Override
+    public void onExplainLocationPermission() {
+        // The service never requests permissions itself, so it is never asked to explain them
+    }
+
+    @Override
+    public void onLocationPermissionPermanentlyDeclined(View.OnClickListener fromView,
+                                                        DialogInterface.OnClickListener fromDialog) {
+        sendPrompt(MSG_PERMISSION_PERMANENTLY_DECLINED, 0, null);
+    }
+
+    @Override
+    public void onNeedLocationSettingsChange() {
+        promptPending = true;
+        Bundle data = new Bundle();
+        data.putParcelable(KEY_STATUS, assistant.getLocationSettingsStatus());
+        sendPrompt(MSG_NEED_SETTINGS_CHANGE, 0, data);
+    }
+
+    @Override
+    public void onFallBackToSystemSettings(View.OnClickListener fromView, DialogInterface.OnClickListener fromDialog) {
+        promptPending = true;
+        sendPrompt(MSG_FALL_BACK_TO_SYSTEM_SETTINGS, 0, null);
+    }
+
+    @Override
+    public void onNewLocationAvailable(Location location) {
+        promptPending = false;
+        if (ring != null) ring.write(location);
+    }
+
+    @Override
+    public void onMockLocationsDetected(View.OnClickListener fromView, DialogInterface.OnClickListener fromDialog) {
+        sendPrompt(MSG_MOCK_LOCATIONS_DETECTED, 0, null);
+    }
+
+    @Override
+    public void onError(LocationAssistant.ErrorType type, String message) {
+        Bundle data = new Bundle();
+        data.putString(KEY_MESSAGE, message);
+        sendPrompt(MSG_ERROR, type.ordinal(), data);
+    }
+}
@@ -0,0 +1,375 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentSender;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.provider.Settings;
+import android.support.v4.app.ActivityCompat;
+import android.util.Log;
+
+import com.google.android.gms.common.api.Status;
+
+import java.io.IOException;
+
+/**
+ * A thin client for the {@link LocationService}, usable from any process of the app.
+ * <p>
+ * Call {@link #connect()} and {@link #disconnect()} where you would otherwise start and stop a LocationAssistant and
+ * poll for new locations with {@link #readNext(Location)}, which reads from shared memory without any IPC. To let the
+ * user resolve permission and settings issues, register an activity and a {@link LocationAssistant.Listener} with
+ * {@link #register(Activity, LocationAssistant.Listener)} and forward the activity's results just like you would with
+ * a LocationAssistant. The listener receives all callbacks except {@code onNewLocationAvailable()}.
+ */
+public class LocationServiceClient {
+
+    private static final int REQUEST_CHECK_SETTINGS = 0;
+    private static final int REQUEST_LOCATION_PERMISSION = 1;
+
+    private final Context context;
+    private final Messenger promptMessenger = new Messenger(new Handler(Looper.getMainLooper(),
+            new Handler.Callback() {
+                @Override
+                public boolean handleMessage(Message msg) {
+                    return onServiceMessage(msg);
+                }
+            }));
+
+    private Messenger service;
+    private boolean connected;
+    private Activity activity;
+    private LocationAssistant.Listener listener;
+    private LocationAssistant.Accuracy accuracy;
+    private long updateInterval;
+    private Status locationStatus;
+    private boolean quiet;
+
+    // Shared memory
+    private LocationRing ring;
+    private long cursor;
+    private long numMissed;
+
+    /**
+     * Constructs a LocationServiceClient.
+     *
+     * @param context the context of the application or activity that wants to receive location updates
+     */
+    public LocationServiceClient(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Mutes/unmutes all log output.
+     *
+     * @param quiet whether or not to disable all log output (including errors).
+     */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Binds to the LocationService and subscribes to location updates.
+     */
+    public void connect() {
+        if (connected) return;
+        connected = true;
+        context.bindService(new Intent(context, LocationService.class), connection, Context.BIND_AUTO_CREATE);
+    }
+
+    /**
+     * Unsubscribes from location updates and unbinds from the LocationService.
+     */
+    public void disconnect() {
+        if (!connected) return;
+        send(LocationService.MSG_UNSUBSCRIBE, 0, null, false);
+        connected = false;
+        service = null;
+        context.unbindService(connection);
+    }
+
+    /**
+     * Changes the desired accuracy and update interval of the shared LocationAssistant.
+     *
+     * @param accuracy       the desired accuracy of the location updates
+     * @param updateInterval the interval (in milliseconds) at which location updates are requested
+     */
+    public void setAccuracy(LocationAssistant.Accuracy accuracy, long updateInterval) {
+        this.accuracy = accuracy;
+        this.updateInterval = updateInterval;
+        sendAccuracy();
+    }
+
+    /**
+     * Registers the activity that will handle permission and settings prompts for all clients.
+     * Call this at the end of your {@link Activity#onResume()} implementation. If the service is still waiting for the
+     * user to resolve a prompt, it repeats the prompt to this activity; otherwise registering costs no location calls.
+     *
+     * @param activity the activity that will prompt the user
+     * @param listener a listener that will receive location-related events
+     */
+    public void register(Activity activity, LocationAssistant.Listener listener) {
+        this.activity = activity;
+        this.listener = listener;
+        send(LocationService.MSG_REGISTER_PROMPTS, 0, null, true);
+    }
+
+    /**
+     * Clears the registered activity and its listener.
+     * Call this at the beginning of your {@link Activity#onPause()} implementation.
+     */
+    public void unregister() {
+        send(LocationService.MSG_UNREGISTER_PROMPTS, 0, null, false);
+        this.activity = null;
+        this.listener = null;
+    }
+
+    /**
+     * Brings up a system dialog asking the user to give location permission to the app.
+     */
+    public void requestLocationPermission() {
+        if (activity == null) {
+            logNoActivity();
+            return;
+        }
+        ActivityCompat.requestPermissions(activity,
+                new String[]{Manifest.permission.ACCESS_FINE_LOCATION}, REQUEST_LOCATION_PERMISSION);
+    }
+
+    /**
+     * Call this method at the end of your {@link Activity#onRequestPermissionsResult} implementation.
+     *
+     * @param requestCode  the request code returned to the activity (simply pass it on)
+     * @param grantResults the results array returned to the activity (simply pass it on)
+     * @return {@code true} if the location permission was granted, {@code false} otherwise
+     */
+    public boolean onPermissionsUpdated(int requestCode, int[] grantResults) {
+        if (requestCode != REQUEST_LOCATION_PERMISSION) return false;
+        if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            send(LocationService.MSG_RETRY, 0, null, false);
+            return true;
+        }
+        send(LocationService.MSG_PERMISSION_DENIED, 0, null, false);
+        return false;
+    }
+
+    /**
+     * Brings up an in-app system dialog that requests a change in location provider settings.
+     * Call this method only from within {@link LocationAssistant.Listener#onNeedLocationSettingsChange()}.
+     */
+    public void changeLocationSettings() {
+        if (locationStatus == null) return;
+        if (activity == null) {
+            logNoActivity();
+            return;
+        }
+        try {
+            locationStatus.startResolutionForResult(activity, REQUEST_CHECK_SETTINGS);
+        } catch (IntentSender.SendIntentException e) {
+            if (!quiet)
+                Log.e(getClass().getSimpleName(), "Error while attempting to resolve location status issues:\n" +
+                        e.toString());
+            if (listener != null)
+                listener.onError(LocationAssistant.ErrorType.SETTINGS, "Could not resolve location settings issue:\n" +
+                        e.getMessage());
+        }
+    }
+
+    /**
+     * Call this method at the end of your {@link Activity#onActivityResult} implementation.
+     *
+     * @param requestCode the request code returned to the activity (simply pass it on)
+     * @param resultCode  the result code returned to the activity (simply pass it on)
+     */
+    public void onActivityResult(int requestCode, int resultCode) {
+        if (requestCode != REQUEST_CHECK_SETTINGS) return;
+        send(LocationService.MSG_RETRY, 0, null, false);
+    }
+
+    /**
+     * Reads the next location that this client has not seen yet into an existing Location object.
+     * Right after connecting, the next location is the most recent one.
+     *
+     * @param out the location to overwrite
+     * @return {@code true} if a location was read, {@code false} if there is no new location
+     */
+    public synchronized boolean readNext(Location out) {
+        if (!attach()) return false;
+        long head = ring.getWriteSequence();
+        while (cursor < head) {
+            if (head - cursor > ring.getCapacity()) {
+                numMissed += head - ring.getCapacity() - cursor;
+                cursor = head - ring.getCapacity();
+            }
+            long seq = cursor + 1;
+            if (ring.read(seq, out)) {
+                cursor = seq;
+                return true;
+            }
+            head = ring.getWriteSequence();
+            // The writer has published the sequence number, but the slot is not visible yet - try again next time
+            if (head - seq < ring.getCapacity() - 1) return false;
+            // The slot was overwritten while we were reading it
+            cursor = seq;
+            numMissed++;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the most recent location into an existing Location object, regardless of what this client has seen.
+     *
+     * @param out the location to overwrite
+     * @return {@code true} if a location was read, {@code false} if none is available
+     */
+    public synchronized boolean readLatest(Location out) {
+        if (!attach()) return false;
+        long head = ring.getWriteSequence();
+        // Fall back to the previous location if the latest one is not visible yet
+        return head > 0 && ring.read(head, out) || head > 1 && ring.read(head - 1, out);
+    }
+
+    /**
+     * Returns the number of locations this client skipped because it did not read them in time.
+     *
+     * @return the number of missed locations
+     */
+    public synchronized long getNumMissed() {
+        return numMissed;
+    }
+
+    private boolean attach() {
+        if (ring != null && !ring.isStale()) return true;
+        if (ring != null) ring.close();
+        try {
+            ring = LocationRing.open(LocationRing.getFile(context));
+        } catch (IOException e) {
+            if (!quiet)
+                Log.e(getClass().getSimpleName(), "Error while opening the location ring:\n" + e.toString());
+            ring = null;
+        }
+        if (ring == null) return false;
+        cursor = Math.max(ring.getWriteSequence() - 1, 0);
+        return true;
+    }
+
+    private void sendAccuracy() {
+        if (accuracy == null) return;
+        Bundle data = new Bundle();
+        data.putLong(LocationService.KEY_UPDATE_INTERVAL, updateInterval);
+        send(LocationService.MSG_SET_ACCURACY, accuracy.ordinal(), data, false);
+    }
+
+    private void send(int what, int arg1, Bundle data, boolean withReplyTo) {
+        if (service == null) return;
+        Message msg = Message.obtain(null, what, arg1, 0);
+        if (data != null) msg.setData(data);
+        if (withReplyTo) msg.replyTo = promptMessenger;
+        try {
+            service.send(msg);
+        } catch (RemoteException e) {
+            // The service has died - the connection will notify us when it is back
+        }
+    }
+
+    private boolean onServiceMessage(Message msg) {
+        if (listener == null) return true;
+        switch (msg.what) {
+            case LocationService.MSG_NEED_PERMISSION:
+                listener.onNeedLocationPermission();
+                return true;
+            case LocationService.MSG_PERMISSION_PERMANENTLY_DECLINED:
+                listener.onLocationPermissionPermanentlyDeclined(onGoToAppSettings, onGoToAppSettings);
+                return true;
+            case LocationService.MSG_NEED_SETTINGS_CHANGE:
+                Bundle data = msg.getData();
+                data.setClassLoader(Status.class.getClassLoader());
+                locationStatus = data.getParcelable(LocationService.KEY_STATUS);
+                listener.onNeedLocationSettingsChange();
+                return true;
+            case LocationService.MSG_FALL_BACK_TO_SYSTEM_SETTINGS:
+                listener.onFallBackToSystemSettings(onGoToLocationSettings, onGoToLocationSettings);
+                return true;
+            case LocationService.MSG_MOCK_LOCATIONS_DETECTED:
+                listener.onMockLocationsDetected(onGoToDevSettings, onGoToDevSettings);
+                return true;
+            case LocationService.MSG_ERROR:
+                listener.onError(LocationAssistant.ErrorType.values()[msg.arg1],
+                        msg.getData().getString(LocationService.KEY_MESSAGE));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void logNoActivity() {
+        if (!quiet)
+            Log.e(getClass().getSimpleName(), "Need to prompt the user, but no activity is registered! " +
+                    "Register it explicitly with register().");
+    }
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = new Messenger(binder);
+            send(LocationService.MSG_SUBSCRIBE, 0, null, false);
+            sendAccuracy();
+            if (activity != null) send(LocationService.MSG_REGISTER_PROMPTS, 0, null, true);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+        }
+    };
+
+    private final SettingsClickListener onGoToAppSettings =
+            new ClientSettingsClickListener(Settings.ACTION_APPLICATION_DETAILS_SETTINGS, true);
+    private final SettingsClickListener onGoToLocationSettings =
+            new ClientSettingsClickListener(Settings.ACTION_LOCATION_SOURCE_SETTINGS, false);
+    private final SettingsClickListener onGoToDevSettings =
+            new ClientSettingsClickListener(Settings.ACTION_APPLICATION_DEVELOPMENT_SETTINGS, false);
+
+    private class ClientSettingsClickListener extends SettingsClickListener {
+        ClientSettingsClickListener(String action, boolean forThisApp) {
+            super(action, forThisApp);
+        }
+
+        @Override
+        Activity getActivity() {
+            return activity;
+        }
+
+        @Override
+        void onNoActivity() {
+            logNoActivity();
+        }
+    }
+}
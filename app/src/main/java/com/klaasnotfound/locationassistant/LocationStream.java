@@ -0,0 +1,260 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.location.Location;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A publisher of valid locations for consumers that may be slower than the location provider.
+ * The LocationAssistant hands every valid location to this stream without blocking. Each subscriber requests a number
+ * of locations and receives them on its own executor, according to the backpressure policy it chose when subscribing.
+ */
+public class LocationStream {
+
+    /**
+     * Receives locations from a {@link LocationStream}.
+     */
+    public interface Subscriber {
+        /**
+         * Called once when the subscription has been set up.
+         * No locations will be delivered until you call {@link Subscription#request(long)}.
+         *
+         * @param subscription the subscription that controls the flow of locations to this subscriber
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called on the subscriber's executor for every location that was requested.
+         * If this method throws, the subscription is cancelled and the exception is rethrown on the executor's thread.
+         *
+         * @param location a valid location
+         */
+        void onNext(Location location);
+    }
+
+    /**
+     * Controls the flow of locations from a {@link LocationStream} to a single {@link Subscriber}.
+     */
+    public interface Subscription {
+        /**
+         * Requests the given number of additional locations.
+         *
+         * @param n the number of locations the subscriber is ready to process (must be positive)
+         */
+        void request(long n);
+
+        /**
+         * Stops the delivery of locations to the subscriber.
+         */
+        void cancel();
+
+        /**
+         * Returns the number of locations that were discarded because the subscriber did not keep up.
+         *
+         * @return the number of dropped or conflated locations
+         */
+        long getNumDropped();
+    }
+
+    /**
+     * Possible policies for handling locations that arrive faster than a subscriber requests them.
+     */
+    public enum Backpressure {
+        /**
+         * Keep only the latest location, replacing any location that has not been delivered yet
+         */
+        LATEST,
+        /**
+         * Keep up to a fixed number of locations and discard new ones while the buffer is full
+         */
+        BUFFER,
+        /**
+         * Keep up to a fixed number of locations and discard the oldest one while the buffer is full
+         */
+        DROP_OLDEST
+    }
+
+    private final CopyOnWriteArrayList<StreamSubscription> subscriptions =
+            new CopyOnWriteArrayList<StreamSubscription>();
+
+    /**
+     * Subscribes to the stream of valid locations.
+     *
+     * @param subscriber   the subscriber that will receive the locations
+     * @param backpressure the policy to apply when the subscriber falls behind
+     * @param capacity     the maximum number of pending locations (ignored for {@link Backpressure#LATEST})
+     * @param executor     the executor on which the subscriber will be called (if it rejects a delivery, the
+     *                     subscription is cancelled)
+     * @return the subscription, which has also been passed to {@link Subscriber#onSubscribe(Subscription)}
+     */
+    public Subscription subscribe(Subscriber subscriber, Backpressure backpressure, int capacity, Executor executor) {
+        if (subscriber == null || backpressure == null || executor == null)
+            throw new IllegalArgumentException("Subscriber, backpressure policy and executor must not be null.");
+        if (backpressure != Backpressure.LATEST && capacity < 1)
+            throw new IllegalArgumentException("Buffer capacity must be positive.");
+        StreamSubscription subscription = new StreamSubscription(subscriber, backpressure, capacity, executor);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        return subscription;
+    }
+
+    /**
+     * Returns whether or not anybody is currently subscribed to the stream.
+     *
+     * @return {@code true} if there is at least one active subscription
+     */
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Hands a new location to all subscribers. This method never blocks and must only be called from a single thread.
+     *
+     * @param location a valid location
+     */
+    void publish(Location location) {
+        for (StreamSubscription subscription : subscriptions)
+            subscription.offer(location);
+    }
+
+    private final class StreamSubscription implements Subscription, Runnable {
+
+        private final Subscriber subscriber;
+        private final Backpressure backpressure;
+        private final int capacity;
+        private final Executor executor;
+
+        // LATEST uses a single slot, BUFFER and DROP_OLDEST use a bounded queue
+        private final AtomicReference<Location> latest = new AtomicReference<Location>();
+        private final ConcurrentLinkedQueue<Location> queue = new ConcurrentLinkedQueue<Location>();
+        private final AtomicInteger queueSize = new AtomicInteger();
+
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicLong numDropped = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        StreamSubscription(Subscriber subscriber, Backpressure backpressure, int capacity, Executor executor) {
+            this.subscriber = subscriber;
+            this.backpressure = backpressure;
+            this.capacity = capacity;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0 || cancelled.get()) return;
+            long r, u;
+            do {
+                r = requested.get();
+                u = r + n;
+                if (u < 0) u = Long.MAX_VALUE; // Prevent overflow
+            } while (!requested.compareAndSet(r, u));
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.getAndSet(true)) return;
+            subscriptions.remove(this);
+            latest.set(null);
+            queue.clear();
+        }
+
+        @Override
+        public long getNumDropped() {
+            return numDropped.get();
+        }
+
+        void offer(Location location) {
+            if (cancelled.get()) return;
+            switch (backpressure) {
+                case LATEST:
+                    if (latest.getAndSet(location) != null) numDropped.incrementAndGet();
+                    break;
+                case BUFFER:
+                    if (queueSize.get() >= capacity) {
+                        numDropped.incrementAndGet();
+                        return;
+                    }
+                    queue.offer(location);
+                    queueSize.incrementAndGet();
+                    break;
+                case DROP_OLDEST:
+                    if (queueSize.get() >= capacity && queue.poll() != null) {
+                        queueSize.decrementAndGet();
+                        numDropped.incrementAndGet();
+                    }
+                    queue.offer(location);
+                    queueSize.incrementAndGet();
+                    break;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            // Only the caller that moves the counter away from zero starts a drain
+            if (wip.getAndIncrement() != 0) return;
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                // Typically a RejectedExecutionException because the executor has been shut down
+                abort();
+            }
+        }
+
+        private void abort() {
+            cancel();
+            // No drain is running anymore, so nothing else will ever bring the counter back to zero
+            wip.set(0);
+        }
+
+        private Location poll() {
+            if (backpressure == Backpressure.LATEST) return latest.getAndSet(null);
+            Location location = queue.poll();
+            if (location != null) queueSize.decrementAndGet();
+            return location;
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                while (!cancelled.get() && requested.get() > 0) {
+                    Location location = poll();
+                    if (location == null) break;
+                    if (requested.get() != Long.MAX_VALUE) requested.decrementAndGet();
+                    try {
+                        subscriber.onNext(location);
+                    } catch (Throwable t) {
+                        abort();
+                        throw t;
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.google.android.gms.location.LocationListener;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A streaming parser for NMEA 0183 sentences from a GNSS receiver (e.g. an external Bluetooth receiver or the
+ * platform's NMEA listener).
+ * <p>
+ * The parser accepts raw bytes in arbitrary chunks, validates each sentence's checksum and interprets GGA, RMC and
+ * GSA sentences. Sentences that belong to the same fix (same time of day) are merged into a single Location that is
+ * handed to a {@link LocationListener}. Pass a LocationAssistant as the listener to run these fixes through the same
+ * plausibility checks as fused locations - in that case, feed the parser on the main thread. Apart from the one
+ * Location per fix, the parser does not allocate.
+ */
+public class NmeaParser {
+
+    private static final int MAX_SENTENCE_LENGTH = 128;
+    private static final int MAX_FIELDS = 24;
+    private static final float USER_EQUIVALENT_RANGE_ERROR = 5f; // Meters of error per unit of HDOP
+    private static final double KNOTS_TO_METERS_PER_SECOND = 0.514444;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private final LocationListener listener;
+
+    // Sentence being assembled
+    private final byte[] sentence = new byte[MAX_SENTENCE_LENGTH];
+    private int length;
+    private boolean inSentence;
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private int numFields;
+
+    // Fix being assembled
+    private long fixTimeOfDay = -1;
+    private boolean fixHasPosition;
+    private boolean fixHasGga;
+    private boolean fixHasRmc;
+    private boolean fixEmitted;
+    private double fixLatitude;
+    private double fixLongitude;
+    private boolean fixHasAltitude;
+    private double fixAltitude;
+    private boolean fixHasSpeed;
+    private float fixSpeed;
+    private boolean fixHasBearing;
+    private float fixBearing;
+    private float fixHdop = -1;
+    private long dateMillis = -1;
+
+    // Statistics
+    private long numSentences;
+    private long numChecksumErrors;
+    private long numFixes;
+
+    /**
+     * Constructs an NmeaParser.
+     *
+     * @param listener the listener that will receive the assembled fixes, e.g. a LocationAssistant
+     */
+    public NmeaParser(LocationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Feeds raw bytes into the parser. Sentences may be split across calls.
+     *
+     * @param data   the buffer holding the bytes
+     * @param offset the offset of the first byte
+     * @param count  the number of bytes
+     */
+    public void feed(byte[] data, int offset, int count) {
+        for (int i = offset; i < offset + count; i++)
+            feed(data[i]);
+    }
+
+    /**
+     * Feeds all remaining bytes of a buffer into the parser. Sentences may be split across calls.
+     *
+     * @param buffer the buffer to consume
+     */
+    public void feed(ByteBuffer buffer) {
+        while (buffer.hasRemaining())
+            feed(buffer.get());
+    }
+
+    /**
+     * Feeds characters into the parser, e.g. a sentence received from the platform's NMEA listener.
+     *
+     * @param chars the characters to feed
+     */
+    public void feed(CharSequence chars) {
+        for (int i = 0; i < chars.length(); i++)
+            feed((byte) chars.charAt(i));
+        // Platform listeners usually deliver complete sentences, possibly without a line break
+        feed((byte) '\n');
+    }
+
+    /**
+     * Returns the number of well-formed sentences processed so far.
+     */
+    public long getNumSentences() {
+        return numSentences;
+    }
+
+    /**
+     * Returns the number of sentences that were discarded because of a missing or wrong checksum.
+     */
+    public long getNumChecksumErrors() {
+        return numChecksumErrors;
+    }
+
+    /**
+     * Returns the number of fixes handed to the listener so far.
+     */
+    public long getNumFixes() {
+        return numFixes;
+    }
+
+    private void feed(byte b) {
+        if (b == '$') {
+            inSentence = true;
+            length = 0;
+            return;
+        }
+        if (!inSentence) return;
+        if (b == '\r' || b == '\n') {
+            inSentence = false;
+            if (length > 0) processSentence();
+            return;
+        }
+        if (length == MAX_SENTENCE_LENGTH) {
+            // Too long to be valid NMEA
+            inSentence = false;
+            return;
+        }
+        sentence[length++] = b;
+    }
+
+    private void processSentence() {
+        // Validate checksum: XOR of everything between '$' and '*'
+        int star = -1;
+        int checksum = 0;
+        for (int i = 0; i < length; i++) {
+            if (sentence[i] == '*') {
+                star = i;
+                break;
+            }
+            checksum ^= sentence[i];
+        }
+        if (star < 0 || star + 2 >= length) {
+            numChecksumErrors++;
+            return;
+        }
+        int hi = hexValue(sentence[star + 1]);
+        int lo = hexValue(sentence[star + 2]);
+        if (hi < 0 || lo < 0 || ((hi << 4) | lo) != checksum) {
+            numChecksumErrors++;
+            return;
+        }
+
+        // Split fields (field 0 is the address, e.g. "GPGGA")
+        numFields = 0;
+        int start = 0;
+        for (int i = 0; i <= star && numFields < MAX_FIELDS; i++) {
+            if (i == star || sentence[i] == ',') {
+                fieldStart[numFields] = start;
+                fieldEnd[numFields] = i;
+                numFields++;
+                start = i + 1;
+            }
+        }
+        if (fieldEnd[0] - fieldStart[0] < 5) return;
+        numSentences++;
+
+        int type = fieldEnd[0] - 3;
+        if (sentence[type] == 'G' && sentence[type + 1] == 'G' && sentence[type + 2] == 'A')
+            processGga();
+        else if (sentence[type] == 'R' && sentence[type + 1] == 'M' && sentence[type + 2] == 'C')
+            processRmc();
+        else if (sentence[type] == 'G' && sentence[type + 1] == 'S' && sentence[type + 2] == 'A')
+            processGsa();
+    }
+
+    private void processGga() {
+        // $--GGA,hhmmss.ss,llll.ll,a,yyyyy.yy,a,q,nn,h.h,a.a,M,...
+        if (numFields < 10 || isEmpty(1)) return;
+        if (isEmpty(6) || parseInt(6) == 0) return; // No fix
+        beginFix(parseTimeOfDay(1));
+        if (!parsePosition(2)) return;
+        if (!isEmpty(8)) fixHdop = (float) parseDouble(8);
+        if (!isEmpty(9)) {
+            fixHasAltitude = true;
+            fixAltitude = parseDouble(9);
+        }
+        fixHasGga = true;
+        maybeEmit();
+    }
+
+    private void processRmc() {
+        // $--RMC,hhmmss.ss,A,llll.ll,a,yyyyy.yy,a,x.x,x.x,ddmmyy,...
+        if (numFields < 10 || isEmpty(1) || isEmpty(9)) return;
+        if (fieldEnd[2] - fieldStart[2] != 1 || sentence[fieldStart[2]] != 'A') return; // Not valid
+        int date = parseInt(9);
+        int year = date % 100;
+        year += year < 80 ? 2000 : 1900; // Two-digit years, as in the NMEA spec
+        // Deliver the pending fix of the previous epoch before its date changes (e.g. at midnight)
+        beginFix(parseTimeOfDay(1));
+        dateMillis = daysFromCivil(year, date / 100 % 100, date / 10000) * MILLIS_PER_DAY;
+        if (!parsePosition(3)) return;
+        if (!isEmpty(7)) {
+            fixHasSpeed = true;
+            fixSpeed = (float) (parseDouble(7) * KNOTS_TO_METERS_PER_SECOND);
+        }
+        if (!isEmpty(8)) {
+            fixHasBearing = true;
+            fixBearing = (float) parseDouble(8);
+        }
+        fixHasRmc = true;
+        maybeEmit();
+    }
+
+    private void processGsa() {
+        // $--GSA,a,x,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,p.p,h.h,v.v
+        // GSA carries no time, so it can only be attributed to the epoch in progress. If it arrives once that epoch
+        // has been delivered, it most likely belongs there and is dropped rather than applied to the next one.
+        if (numFields < 17 || isEmpty(16) || fixEmitted) return;
+        fixHdop = (float) parseDouble(16);
+    }
+
+    private void beginFix(long timeOfDay) {
+        if (timeOfDay == fixTimeOfDay) return;
+        // A new epoch has started: deliver what we have of the previous one
+        if (!fixEmitted && fixHasPosition) emit();
+        // The time of day jumped back by more than half a day: we passed midnight before an RMC told us the new date
+        if (dateMillis >= 0 && fixTimeOfDay >= 0 && timeOfDay < fixTimeOfDay - MILLIS_PER_DAY / 2)
+            dateMillis += MILLIS_PER_DAY;
+        fixTimeOfDay = timeOfDay;
+        fixHasPosition = false;
+        fixHasGga = false;
+        fixHasRmc = false;
+        fixEmitted = false;
+        fixHasAltitude = false;
+        fixHasSpeed = false;
+        fixHasBearing = false;
+        fixHdop = -1;
+    }
+
+    private void maybeEmit() {
+        if (!fixEmitted && fixHasGga && fixHasRmc) emit();
+    }
+
+    private void emit() {
+        fixEmitted = true;
+        if (dateMillis < 0) return; // We need at least one RMC sentence to know the date
+
+        Location location = newLocation();
+        location.setTime(dateMillis + fixTimeOfDay);
+        if (Build.VERSION.SDK_INT >= 17)
+            location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+        location.setLatitude(fixLatitude);
+        location.setLongitude(fixLongitude);
+        if (fixHasAltitude) location.setAltitude(fixAltitude);
+        if (fixHasSpeed) location.setSpeed(fixSpeed);
+        if (fixHasBearing) location.setBearing(fixBearing);
+        if (fixHdop > 0) location.setAccuracy(fixHdop * USER_EQUIVALENT_RANGE_ERROR);
+        numFixes++;
+        listener.onLocationChanged(location);
+    }
+
+    /**
+     * Creates the Location for a new fix. Tests override this, as the framework's Location is a stub there.
+     */
+    Location newLocation() {
+        return new Location(LocationManager.GPS_PROVIDER);
+    }
+
+    private boolean parsePosition(int field) {
+        if (isEmpty(field) || isEmpty(field + 1) || isEmpty(field + 2) || isEmpty(field + 3)) return false;
+        double lat = parseDegreesMinutes(field);
+        double lon = parseDegreesMinutes(field + 2);
+        if (sentence[fieldStart[field + 1]] == 'S') lat = -lat;
+        if (sentence[fieldStart[field + 3]] == 'W') lon = -lon;
+        fixLatitude = lat;
+        fixLongitude = lon;
+        fixHasPosition = true;
+        return true;
+    }
+
+    private double parseDegreesMinutes(int field) {
+        // (d)ddmm.mmmm
+        double value = parseDouble(field);
+        double degrees = Math.floor(value / 100);
+        return degrees + (value - degrees * 100) / 60;
+    }
+
+    private long parseTimeOfDay(int field) {
+        // hhmmss(.sss)
+        double value = parseDouble(field);
+        long hhmmss = (long) value;
+        long millis = Math.round((value - hhmmss) * 1000);
+        return ((hhmmss / 10000) * 3600 + (hhmmss / 100 % 100) * 60 + hhmmss % 100) * 1000 + millis;
+    }
+
+    private boolean isEmpty(int field) {
+        return field >= numFields || fieldEnd[field] == fieldStart[field];
+    }
+
+    private int parseInt(int field) {
+        int value = 0;
+        for (int i = fieldStart[field]; i < fieldEnd[field]; i++) {
+            int d = sentence[i] - '0';
+            if (d < 0 || d > 9) break;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private double parseDouble(int field) {
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = false;
+        if (i < end && (sentence[i] == '-' || sentence[i] == '+')) {
+            negative = sentence[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            byte b = sentence[i];
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            int d = b - '0';
+            if (d < 0 || d > 9) break;
+            mantissa = mantissa * 10 + d;
+            if (decimals >= 0) decimals++;
+        }
+        double value = mantissa;
+        for (int k = 0; k < decimals; k++)
+            value /= 10;
+        return negative ? -value : value;
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') return b - '0';
+        if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+        if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+        return -1;
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        // Days since 1970-01-01 in the proleptic Gregorian calendar
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
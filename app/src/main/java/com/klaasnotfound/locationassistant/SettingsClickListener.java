@@ -0,0 +1,74 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.app.Activity;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.net.Uri;
+import android.provider.Settings;
+import android.view.View;
+
+/**
+ * An OnClickListener for views and dialogs that sends the user to a system settings page.
+ */
+abstract class SettingsClickListener implements View.OnClickListener, DialogInterface.OnClickListener {
+
+    private final String action;
+    private final boolean forThisApp;
+
+    /**
+     * @param action     the settings action to launch, e.g. {@link Settings#ACTION_LOCATION_SOURCE_SETTINGS}
+     * @param forThisApp whether or not the intent should carry the package URI of the app
+     */
+    SettingsClickListener(String action, boolean forThisApp) {
+        this.action = action;
+        this.forThisApp = forThisApp;
+    }
+
+    /**
+     * Returns the activity from which to launch the settings, or {@code null} if there is none.
+     */
+    abstract Activity getActivity();
+
+    /**
+     * Called when the settings cannot be launched because there is no activity.
+     */
+    abstract void onNoActivity();
+
+    @Override
+    public void onClick(View v) {
+        launch();
+    }
+
+    @Override
+    public void onClick(DialogInterface dialog, int which) {
+        launch();
+    }
+
+    private void launch() {
+        Activity activity = getActivity();
+        if (activity == null) {
+            onNoActivity();
+            return;
+        }
+        Intent intent = new Intent(action);
+        if (forThisApp)
+            intent.setData(Uri.fromParts("package", activity.getPackageName(), null));
+        activity.startActivity(intent);
+    }
+}
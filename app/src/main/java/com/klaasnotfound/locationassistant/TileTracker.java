@@ -0,0 +1,333 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.location.Location;
+
+/**
+ * Tracks the slippy-map tiles (z/x/y, as used by OpenStreetMap and most web maps) the user is in and predicts the
+ * tiles the user is about to enter.
+ * <p>
+ * For every location, the tracker computes the tile at each configured zoom level and reports a change only when the
+ * user enters a new tile. If the location has a speed and bearing, the tracker extrapolates the user's path over a
+ * configurable time horizon and walks the tile grid along it, reporting every tile the path crosses (including both
+ * neighbors when it passes through a tile corner), ordered by expected time of entry. No objects are allocated per
+ * location. Attach the tracker to a LocationAssistant with
+ * {@link LocationAssistant#setTileTracker(TileTracker)} or feed it yourself.
+ */
+public class TileTracker {
+
+    /**
+     * Receives tile events.
+     */
+    public interface Listener {
+        /**
+         * Called when the user has entered a new tile.
+         *
+         * @param zoom the zoom level
+         * @param x    the tile column
+         * @param y    the tile row
+         */
+        void onTileChanged(int zoom, int x, int y);
+
+        /**
+         * Called when the list of tiles the user is expected to enter has changed.
+         * The list is reused by the tracker, so copy whatever you need before returning.
+         *
+         * @param tiles the tiles to prefetch, most urgent first
+         */
+        void onPrefetchTiles(PrefetchList tiles);
+    }
+
+    /**
+     * Loads tiles on behalf of a TileTracker.
+     */
+    public interface TileFetcher {
+        /**
+         * Called when the user has entered a tile, which is needed right away.
+         */
+        void fetch(int zoom, int x, int y);
+
+        /**
+         * Called for every tile the user is expected to enter soon.
+         *
+         * @param rank the position of the tile in the prefetch list (0 is the most urgent)
+         */
+        void prefetch(int zoom, int x, int y, int rank);
+    }
+
+    /**
+     * A list of tiles with their expected time of entry.
+     */
+    public static final class PrefetchList {
+        private final int[] zoom;
+        private final int[] x;
+        private final int[] y;
+        private final long[] eta;
+        private int size;
+
+        PrefetchList(int capacity) {
+            zoom = new int[capacity];
+            x = new int[capacity];
+            y = new int[capacity];
+            eta = new long[capacity];
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getZoom(int i) {
+            return zoom[i];
+        }
+
+        public int getX(int i) {
+            return x[i];
+        }
+
+        public int getY(int i) {
+            return y[i];
+        }
+
+        /**
+         * Returns the time (in milliseconds) until the user is expected to enter the tile.
+         */
+        public long getEta(int i) {
+            return eta[i];
+        }
+
+        // Keeps the list ordered by eta, tiles with equal etas stay in the order they were added
+        private void add(int z, int tx, int ty, long t) {
+            int i = size;
+            while (i > 0 && eta[i - 1] > t) {
+                zoom[i] = zoom[i - 1];
+                x[i] = x[i - 1];
+                y[i] = y[i - 1];
+                eta[i] = eta[i - 1];
+                i--;
+            }
+            zoom[i] = z;
+            x[i] = tx;
+            y[i] = ty;
+            eta[i] = t;
+            size++;
+        }
+
+        private boolean sameTilesAs(PrefetchList other) {
+            if (size != other.size) return false;
+            for (int i = 0; i < size; i++)
+                if (zoom[i] != other.zoom[i] || x[i] != other.x[i] || y[i] != other.y[i]) return false;
+            return true;
+        }
+    }
+
+    private static final double METERS_PER_DEGREE = 111319.49;
+    private static final double MAX_LATITUDE = 85.05112878;
+    private static final int MAX_TILES_PER_ZOOM = 32;
+    private static final double CORNER_EPSILON = 1e-9;
+    private static final float MIN_SPEED = 0.5f;
+
+    private final int[] zoomLevels;
+    private final long lookahead;
+    private final Listener listener;
+    private TileFetcher fetcher;
+
+    private final int[] currentX;
+    private final int[] currentY;
+    private PrefetchList prefetch;
+    private PrefetchList previousPrefetch;
+
+    /**
+     * Constructs a TileTracker.
+     *
+     * @param zoomLevels the zoom levels to track (0-24)
+     * @param lookahead  how far (in milliseconds) to extrapolate the user's path for prefetching (at most 32 tiles
+     *                   per zoom level are predicted)
+     * @param listener   a listener that will receive tile events (may be {@code null} if you only use a fetcher)
+     */
+    public TileTracker(int[] zoomLevels, long lookahead, Listener listener) {
+        for (int zoom : zoomLevels)
+            if (zoom < 0 || zoom > 24) throw new IllegalArgumentException("Zoom levels must be between 0 and 24.");
+        this.zoomLevels = zoomLevels.clone();
+        this.lookahead = lookahead;
+        this.listener = listener;
+        currentX = new int[zoomLevels.length];
+        currentY = new int[zoomLevels.length];
+        prefetch = new PrefetchList(zoomLevels.length * MAX_TILES_PER_ZOOM);
+        previousPrefetch = new PrefetchList(zoomLevels.length * MAX_TILES_PER_ZOOM);
+        reset();
+    }
+
+    /**
+     * Sets the fetcher that will load entered and predicted tiles.
+     *
+     * @param fetcher the tile fetcher, or {@code null} to stop fetching
+     */
+    public void setTileFetcher(TileFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Forgets the current tiles, so the next location will report a tile change at every zoom level.
+     */
+    public void reset() {
+        for (int i = 0; i < zoomLevels.length; i++) {
+            currentX[i] = -1;
+            currentY[i] = -1;
+        }
+        prefetch.size = 0;
+        previousPrefetch.size = 0;
+    }
+
+    /**
+     * Returns the tile column that contains the given longitude.
+     *
+     * @param longitude the longitude (in degrees)
+     * @param zoom      the zoom level
+     * @return the tile column
+     */
+    public static int getTileX(double longitude, int zoom) {
+        int n = 1 << zoom;
+        int x = (int) Math.floor(toTileX(longitude, n));
+        return Math.min(Math.max(x, 0), n - 1);
+    }
+
+    /**
+     * Returns the tile row that contains the given latitude.
+     *
+     * @param latitude the latitude (in degrees)
+     * @param zoom     the zoom level
+     * @return the tile row
+     */
+    public static int getTileY(double latitude, int zoom) {
+        int n = 1 << zoom;
+        int y = (int) Math.floor(toTileY(latitude, n));
+        return Math.min(Math.max(y, 0), n - 1);
+    }
+
+    private static double toTileX(double longitude, int n) {
+        return (longitude + 180) / 360 * n;
+    }
+
+    private static double toTileY(double latitude, int n) {
+        double lat = Math.toRadians(Math.min(Math.max(latitude, -MAX_LATITUDE), MAX_LATITUDE));
+        return (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * n;
+    }
+
+    /**
+     * Processes a new location.
+     *
+     * @param location a valid location
+     */
+    public void onLocation(Location location) {
+        double lat = location.getLatitude();
+        double lon = location.getLongitude();
+        for (int i = 0; i < zoomLevels.length; i++) {
+            int zoom = zoomLevels[i];
+            int x = getTileX(lon, zoom);
+            int y = getTileY(lat, zoom);
+            if (x == currentX[i] && y == currentY[i]) continue;
+            currentX[i] = x;
+            currentY[i] = y;
+            if (fetcher != null) fetcher.fetch(zoom, x, y);
+            if (listener != null) listener.onTileChanged(zoom, x, y);
+        }
+        predict(location);
+    }
+
+    private void predict(Location location) {
+        PrefetchList list = previousPrefetch;
+        previousPrefetch = prefetch;
+        prefetch = list;
+        list.size = 0;
+
+        if (location.hasSpeed() && location.hasBearing() && location.getSpeed() >= MIN_SPEED) {
+            double lat = location.getLatitude();
+            double lon = location.getLongitude();
+            double bearing = Math.toRadians(location.getBearing());
+            double distance = location.getSpeed() * lookahead / 1000.0;
+            // Longitudes beyond +-180 are not wrapped, the traversal simply stops at the edge of the map
+            double endLat = lat + distance * Math.cos(bearing) / METERS_PER_DEGREE;
+            double endLon = lon + distance * Math.sin(bearing) /
+                    (METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(lat)), 0.01));
+            for (int i = 0; i < zoomLevels.length; i++)
+                traverse(list, i, lon, lat, endLon, endLat);
+        }
+
+        if (list.sameTilesAs(previousPrefetch)) return;
+        if (fetcher != null)
+            for (int i = 0; i < list.size; i++)
+                fetcher.prefetch(list.zoom[i], list.x[i], list.y[i], i);
+        if (listener != null) listener.onPrefetchTiles(list);
+    }
+
+    // Walks the grid of one zoom level along the straight line (in tile coordinates) from the current position to the
+    // predicted one (Amanatides-Woo), adding every tile entered along the way with the time at which it is entered
+    private void traverse(PrefetchList list, int i, double lon, double lat, double endLon, double endLat) {
+        int zoom = zoomLevels[i];
+        int n = 1 << zoom;
+        int cx = currentX[i];
+        int cy = currentY[i];
+        double x0 = toTileX(lon, n);
+        double y0 = toTileY(lat, n);
+        double dx = toTileX(endLon, n) - x0;
+        double dy = toTileY(endLat, n) - y0;
+
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        // Parameters (0 = now, 1 = end of the lookahead) at which the next column/row boundary is crossed
+        double tMaxX = dx > 0 ? (cx + 1 - x0) / dx : dx < 0 ? (cx - x0) / dx : Double.POSITIVE_INFINITY;
+        double tMaxY = dy > 0 ? (cy + 1 - y0) / dy : dy < 0 ? (cy - y0) / dy : Double.POSITIVE_INFINITY;
+        double tDeltaX = dx != 0 ? Math.abs(1 / dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = dy != 0 ? Math.abs(1 / dy) : Double.POSITIVE_INFINITY;
+
+        int count = 0;
+        while (count < MAX_TILES_PER_ZOOM) {
+            double t = Math.min(tMaxX, tMaxY);
+            if (t > 1) break;
+            long eta = Math.round(Math.max(t, 0) * lookahead);
+            if (Math.abs(tMaxX - tMaxY) < CORNER_EPSILON) {
+                // Passing (almost) exactly through a corner - the path may clip either neighbor
+                if (isOnMap(cx + stepX, cy, n) && count < MAX_TILES_PER_ZOOM) {
+                    list.add(zoom, cx + stepX, cy, eta);
+                    count++;
+                }
+                if (isOnMap(cx, cy + stepY, n) && count < MAX_TILES_PER_ZOOM) {
+                    list.add(zoom, cx, cy + stepY, eta);
+                    count++;
+                }
+                cx += stepX;
+                cy += stepY;
+                tMaxX += tDeltaX;
+                tMaxY += tDeltaY;
+            } else if (tMaxX < tMaxY) {
+                cx += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                cy += stepY;
+                tMaxY += tDeltaY;
+            }
+            if (!isOnMap(cx, cy, n) || count >= MAX_TILES_PER_ZOOM) break;
+            list.add(zoom, cx, cy, eta);
+            count++;
+        }
+    }
+
+    private static boolean isOnMap(int x, int y, int n) {
+        return x >= 0 && x < n && y >= 0 && y < n;
+    }
+}
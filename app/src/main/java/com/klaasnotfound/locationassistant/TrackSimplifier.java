@@ -0,0 +1,207 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.location.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplifies a track on the fly by dropping points that lie (almost) on a straight line between their neighbors.
+ * <p>
+ * The simplifier keeps an anchor (the last point it emitted) and a bounded window of the points received since. As
+ * long as every point in the window lies within the tolerance of the segment from the anchor to the newest point, the
+ * newest point is merely added to the window. Otherwise, or once the window is full, the previous point is emitted
+ * and becomes the new anchor. Memory is therefore bounded by the window size and each point costs at most one pass
+ * over the window.
+ */
+public class TrackSimplifier {
+
+    /**
+     * Receives the points that are needed to keep the track within tolerance.
+     */
+    public interface Listener {
+        /**
+         * Called for every point that is kept, in track order.
+         *
+         * @param location the kept point
+         */
+        void onPointKept(Location location);
+    }
+
+    private static final double METERS_PER_DEGREE = 111319.49;
+
+    private final double tolerance;
+    private final Listener listener;
+
+    // Window of points received since the anchor, in meters relative to the anchor
+    private final double[] windowX;
+    private final double[] windowY;
+    private int windowSize;
+
+    private boolean hasAnchor;
+    private double anchorLat;
+    private double anchorLon;
+    private double metersPerDegreeLon;
+    private Location lastLocation;
+
+    private long numPointsIn;
+    private long numPointsOut;
+
+    /**
+     * Constructs a TrackSimplifier.
+     *
+     * @param tolerance  the maximum perpendicular distance (in meters) of a dropped point from the simplified track
+     * @param windowSize the maximum number of points that may be dropped in a row (bounds memory and CPU per point)
+     * @param listener   a listener that will receive the kept points
+     */
+    public TrackSimplifier(float tolerance, int windowSize, Listener listener) {
+        if (tolerance < 0 || windowSize < 1)
+            throw new IllegalArgumentException("Tolerance must not be negative and window size must be positive.");
+        this.tolerance = tolerance;
+        this.listener = listener;
+        windowX = new double[windowSize];
+        windowY = new double[windowSize];
+    }
+
+    /**
+     * Simplifies a complete track.
+     *
+     * @param track      the points of the track, in order
+     * @param tolerance  the maximum perpendicular distance (in meters) of a dropped point from the simplified track
+     * @param windowSize the maximum number of points that may be dropped in a row
+     * @return the kept points, in order
+     */
+    public static List<Location> simplify(List<Location> track, float tolerance, int windowSize) {
+        final List<Location> result = new ArrayList<Location>();
+        TrackSimplifier simplifier = new TrackSimplifier(tolerance, windowSize, new Listener() {
+            @Override
+            public void onPointKept(Location location) {
+                result.add(location);
+            }
+        });
+        for (Location location : track)
+            simplifier.add(location);
+        simplifier.flush();
+        return result;
+    }
+
+    /**
+     * Adds the next point of the track. The first point of a track is always kept.
+     *
+     * @param location the next point
+     */
+    public void add(Location location) {
+        if (location == null) return;
+        numPointsIn++;
+        if (!hasAnchor) {
+            setAnchor(location);
+            emit(location);
+            return;
+        }
+
+        double x = (location.getLongitude() - anchorLon) * metersPerDegreeLon;
+        double y = (location.getLatitude() - anchorLat) * METERS_PER_DEGREE;
+        if (windowSize < windowX.length && isWindowWithinTolerance(x, y)) {
+            windowX[windowSize] = x;
+            windowY[windowSize] = y;
+            windowSize++;
+            lastLocation = location;
+            return;
+        }
+
+        // The previous point is needed - keep it and start over from there
+        Location previous = lastLocation;
+        setAnchor(previous);
+        emit(previous);
+        windowX[0] = (location.getLongitude() - anchorLon) * metersPerDegreeLon;
+        windowY[0] = (location.getLatitude() - anchorLat) * METERS_PER_DEGREE;
+        windowSize = 1;
+        lastLocation = location;
+    }
+
+    /**
+     * Emits the last point of the track, if it has not been emitted yet.
+     * Call this when the track ends (e.g. when recording stops).
+     */
+    public void flush() {
+        if (windowSize == 0) return;
+        Location last = lastLocation;
+        setAnchor(last);
+        emit(last);
+    }
+
+    /**
+     * Returns the number of points added so far.
+     *
+     * @return the number of points added
+     */
+    public long getNumPointsIn() {
+        return numPointsIn;
+    }
+
+    /**
+     * Returns the number of points kept so far.
+     *
+     * @return the number of points kept
+     */
+    public long getNumPointsOut() {
+        return numPointsOut;
+    }
+
+    /**
+     * Returns the share of points that were dropped so far.
+     *
+     * @return the reduction ratio, between 0 (nothing dropped) and 1
+     */
+    public float getReductionRatio() {
+        if (numPointsIn == 0) return 0;
+        return 1 - (float) numPointsOut / numPointsIn;
+    }
+
+    private void setAnchor(Location location) {
+        hasAnchor = true;
+        anchorLat = location.getLatitude();
+        anchorLon = location.getLongitude();
+        metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(anchorLat));
+        windowSize = 0;
+        lastLocation = location;
+    }
+
+    private void emit(Location location) {
+        numPointsOut++;
+        if (listener != null) listener.onPointKept(location);
+    }
+
+    private boolean isWindowWithinTolerance(double x, double y) {
+        // Distance of each window point to the segment from the anchor (0, 0) to (x, y)
+        double lengthSq = x * x + y * y;
+        double toleranceSq = tolerance * tolerance;
+        for (int i = 0; i < windowSize; i++) {
+            double px = windowX[i];
+            double py = windowY[i];
+            double t = lengthSq > 0 ? (px * x + py * y) / lengthSq : 0;
+            if (t < 0) t = 0;
+            else if (t > 1) t = 1;
+            double dx = px - t * x;
+            double dy = py - t * y;
+            if (dx * dx + dy * dy > toleranceSq) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,397 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.app.Activity;
+import android.content.DialogInterface;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.view.View;
+
+import com.google.android.gms.location.LocationSettingsStatusCodes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the LocationAssistant's acquisition sequence (connecting, permission, settings resolution, provider checks and
+ * the first fix) against scripted Play services and a scripted user on a virtual clock.
+ * <p>
+ * Every combination of connection latency, permission response, settings outcome, provider state, first fix latency
+ * and last known location is one scenario. The test prints the simulated time to first fix and the number of IPC calls
+ * of each scenario and fails if a scenario takes longer or makes more calls than its script allows.
+ */
+public class AcquisitionSimulationTest {
+
+    private static final long USER_DELAY = 2000;
+    private static final long PROVIDER_DELAY = 4000;
+    private static final long DEADLINE = 5 * 60 * 1000;
+    private static final int MAX_SERVICE_CALLS = 5;
+
+    private enum Connect {
+        FAST(50), SLOW(800), VERY_SLOW(4000), FAILS(300);
+
+        final long delay;
+
+        Connect(long delay) {
+            this.delay = delay;
+        }
+    }
+
+    private enum Permission {
+        GRANTED, GRANT_AFTER_PROMPT, DENY_THEN_GRANT, DENY_TWICE
+    }
+
+    private enum Settings {
+        SUCCESS, RESOLUTION_ACCEPTED, RESOLUTION_DECLINED, UNAVAILABLE
+    }
+
+    private enum Providers {
+        ON, OFF_UNTIL_PROMPTED
+    }
+
+    private static final long[] FIRST_FIX_DELAYS = {800, 5000, 25000};
+
+    private static final class Scenario {
+        Connect connect;
+        Permission permission;
+        Settings settings;
+        Providers providers;
+        long firstFixDelay;
+        boolean lastKnown;
+
+        // Results
+        long timeToFirstFix = -1;
+        long timeToLastKnownLocation = -1;
+        int numServiceCalls;
+        int numPlatformCalls;
+        int numPermissionPrompts;
+        int numSettingsPrompts;
+        int numProviderPrompts;
+        boolean permanentlyDeclined;
+        final List<LocationAssistant.ErrorType> errors = new ArrayList<LocationAssistant.ErrorType>();
+
+        boolean isFixExpected() {
+            return connect != Connect.FAILS && permission != Permission.DENY_TWICE &&
+                    (settings == Settings.SUCCESS || settings == Settings.RESOLUTION_ACCEPTED);
+        }
+
+        /**
+         * Returns the time the script allows for the first fix: all latencies and user reactions along the way.
+         */
+        long getMaxTimeToFirstFix(SimulatedPlatform platform) {
+            long t = platform.backgroundDelay + connect.delay + platform.settingsDelay + firstFixDelay;
+            if (permission == Permission.GRANT_AFTER_PROMPT) t += USER_DELAY;
+            if (permission == Permission.DENY_THEN_GRANT) t += 2 * USER_DELAY;
+            if (settings == Settings.RESOLUTION_ACCEPTED) t += USER_DELAY;
+            else if (providers == Providers.OFF_UNTIL_PROMPTED)
+                t += LocationAssistant.RECHECK_DELAY + PROVIDER_DELAY;
+            return t;
+        }
+
+        @Override
+        public String toString() {
+            return connect + "/" + permission + "/" + settings + "/" + providers + "/" + firstFixDelay + "ms/" +
+                    (lastKnown ? "lastKnown" : "noLastKnown");
+        }
+    }
+
+    @Test
+    public void acquisitionScenarios() {
+        List<Scenario> scenarios = new ArrayList<Scenario>();
+        for (Connect connect : Connect.values())
+            for (Permission permission : Permission.values())
+                for (Settings settings : Settings.values())
+                    for (Providers providers : Providers.values())
+                        for (long firstFixDelay : FIRST_FIX_DELAYS)
+                            for (boolean lastKnown : new boolean[]{false, true}) {
+                                Scenario s = new Scenario();
+                                s.connect = connect;
+                                s.permission = permission;
+                                s.settings = settings;
+                                s.providers = providers;
+                                s.firstFixDelay = firstFixDelay;
+                                s.lastKnown = lastKnown;
+                                scenarios.add(s);
+                            }
+
+        List<String> failures = new ArrayList<String>();
+        List<Long> times = new ArrayList<Long>();
+        long totalCalls = 0;
+        int maxCalls = 0;
+        for (Scenario s : scenarios) {
+            SimulatedPlatform platform = run(s);
+            System.out.println(String.format("%-75s ttff=%6d lastKnown=%6d calls=%d", s, s.timeToFirstFix,
+                    s.timeToLastKnownLocation, s.numServiceCalls));
+            String failure = check(s, platform);
+            if (failure != null) failures.add(s + ": " + failure);
+            if (s.timeToFirstFix >= 0) {
+                times.add(s.timeToFirstFix);
+                totalCalls += s.numServiceCalls;
+                maxCalls = Math.max(maxCalls, s.numServiceCalls);
+            }
+        }
+
+        Long[] sorted = times.toArray(new Long[times.size()]);
+        Arrays.sort(sorted);
+        System.out.println(String.format("%d scenarios, %d with a fix: median ttff %dms, p95 %dms, " +
+                        "mean %.2f IPC calls (max %d)", scenarios.size(), sorted.length, sorted[sorted.length / 2],
+                sorted[sorted.length * 95 / 100], (double) totalCalls / sorted.length, maxCalls));
+
+        if (!failures.isEmpty()) {
+            StringBuilder sb = new StringBuilder(failures.size() + " scenarios failed:");
+            for (String failure : failures)
+                sb.append('\n').append(failure);
+            fail(sb.toString());
+        }
+    }
+
+    @Test
+    public void lastKnownLocationDoesNotCountAsFirstFix() {
+        Scenario s = new Scenario();
+        s.connect = Connect.FAST;
+        s.permission = Permission.GRANTED;
+        s.settings = Settings.SUCCESS;
+        s.providers = Providers.ON;
+        s.firstFixDelay = 25000;
+        s.lastKnown = true;
+        SimulatedPlatform platform = run(s);
+
+        long settled = platform.backgroundDelay + Connect.FAST.delay + platform.settingsDelay;
+        assertEquals("Last known location is delivered as soon as the settings are known", settled,
+                s.timeToLastKnownLocation);
+        assertEquals("First fix only counts the location update", settled + s.firstFixDelay, s.timeToFirstFix);
+    }
+
+    @Test
+    public void raisingAccuracyChecksSettingsAgain() {
+        SimulatedPlatform platform = new SimulatedPlatform();
+        platform.settingsStatus = LocationSettingsStatusCodes.SUCCESS;
+        PromptCounter user = new PromptCounter();
+        LocationAssistant assistant = new LocationAssistant(null, user, LocationAssistant.Accuracy.LOW, 1000, false,
+                platform);
+        assistant.setQuiet(true);
+        assistant.start();
+        runFor(platform, 30000);
+        assertTrue("No fix at low accuracy", assistant.getTimeToFirstFix() >= 0);
+
+        // Lowering the accuracy only re-issues the request
+        int calls = assistant.getNumServiceCalls();
+        assistant.setAccuracy(LocationAssistant.Accuracy.PASSIVE, 5000);
+        assertEquals(calls + 1, assistant.getNumServiceCalls());
+
+        // Going back to an accuracy the settings were already checked for does not check them again
+        assistant.setAccuracy(LocationAssistant.Accuracy.LOW, 1000);
+        assertEquals(calls + 2, assistant.getNumServiceCalls());
+
+        // High accuracy needs GPS, which has to be switched on first
+        platform.settingsStatus = LocationSettingsStatusCodes.RESOLUTION_REQUIRED;
+        assistant.setAccuracy(LocationAssistant.Accuracy.HIGH, 1000);
+        runFor(platform, 30000);
+        assertEquals(1, user.numSettingsPrompts);
+        assertEquals(0, user.numProviderPrompts);
+    }
+
+    private static void runFor(SimulatedPlatform platform, long duration) {
+        long deadline = platform.now() + duration;
+        while (platform.step(deadline)) {
+            // Run all events up to the deadline
+        }
+    }
+
+    /**
+     * A user that grants everything up front and only counts the prompts.
+     */
+    private static class PromptCounter implements LocationAssistant.Listener {
+        int numSettingsPrompts;
+        int numProviderPrompts;
+
+        @Override
+        public void onNeedLocationPermission() {
+        }
+
+        @Override
+        public void onExplainLocationPermission() {
+        }
+
+        @Override
+        public void onLocationPermissionPermanentlyDeclined(View.OnClickListener fromView,
+                                                            DialogInterface.OnClickListener fromDialog) {
+        }
+
+        @Override
+        public void onNeedLocationSettingsChange() {
+            numSettingsPrompts++;
+        }
+
+        @Override
+        public void onFallBackToSystemSettings(View.OnClickListener fromView,
+                                               DialogInterface.OnClickListener fromDialog) {
+            numProviderPrompts++;
+        }
+
+        @Override
+        public void onNewLocationAvailable(Location location) {
+        }
+
+        @Override
+        public void onMockLocationsDetected(View.OnClickListener fromView,
+                                            DialogInterface.OnClickListener fromDialog) {
+        }
+
+        @Override
+        public void onError(LocationAssistant.ErrorType type, String message) {
+        }
+    }
+
+    private static String check(Scenario s, SimulatedPlatform platform) {
+        if (s.numServiceCalls != s.numPlatformCalls)
+            return "counted " + s.numServiceCalls + " IPC calls, but made " + s.numPlatformCalls;
+        if (!s.isFixExpected()) {
+            if (s.timeToFirstFix >= 0) return "unexpected fix";
+            if (s.connect == Connect.FAILS && !s.errors.contains(LocationAssistant.ErrorType.RETRIEVAL))
+                return "connection failure not reported";
+            if (s.connect != Connect.FAILS && s.permission == Permission.DENY_TWICE && !s.permanentlyDeclined)
+                return "permanent denial not reported";
+            return null;
+        }
+        if (s.timeToFirstFix < 0) return "no fix within " + DEADLINE + "ms";
+        if (s.timeToFirstFix < s.firstFixDelay) return "first fix before the provider delivered one";
+        if (s.timeToFirstFix > s.getMaxTimeToFirstFix(platform))
+            return "first fix after " + s.timeToFirstFix + "ms, expected at most " + s.getMaxTimeToFirstFix(platform);
+        if (s.numServiceCalls > MAX_SERVICE_CALLS)
+            return s.numServiceCalls + " IPC calls, expected at most " + MAX_SERVICE_CALLS;
+        if (s.numPermissionPrompts > 1 || s.numSettingsPrompts > 1 || s.numProviderPrompts > 1)
+            return "prompted the user more than once";
+        if (s.lastKnown && s.settings == Settings.SUCCESS && s.timeToLastKnownLocation < 0)
+            return "last known location not delivered";
+        return null;
+    }
+
+    private static SimulatedPlatform run(final Scenario s) {
+        final SimulatedPlatform platform = new SimulatedPlatform();
+        platform.connectDelay = s.connect.delay;
+        platform.connectFails = s.connect == Connect.FAILS;
+        platform.permissionGranted = s.permission == Permission.GRANTED;
+        platform.settingsStatus = s.settings == Settings.SUCCESS ? LocationSettingsStatusCodes.SUCCESS :
+                s.settings == Settings.UNAVAILABLE ? LocationSettingsStatusCodes.SETTINGS_CHANGE_UNAVAILABLE :
+                        LocationSettingsStatusCodes.RESOLUTION_REQUIRED;
+        platform.setProvidersEnabled(s.providers == Providers.ON);
+        platform.firstFixDelay = s.firstFixDelay;
+        if (s.lastKnown) platform.lastKnownLocation = new Location("fused");
+
+        final LocationAssistant[] assistant = new LocationAssistant[1];
+        LocationAssistant.Listener user = new LocationAssistant.Listener() {
+            @Override
+            public void onNeedLocationPermission() {
+                if (s.numPermissionPrompts++ > 0) return;
+                if (s.permission == Permission.GRANT_AFTER_PROMPT) {
+                    answerPermission(true, USER_DELAY);
+                } else if (s.permission == Permission.DENY_THEN_GRANT) {
+                    // Denies the system dialog, then accepts after reading the app's explanation
+                    answerPermission(false, USER_DELAY);
+                    answerPermission(true, 2 * USER_DELAY);
+                } else if (s.permission == Permission.DENY_TWICE) {
+                    answerPermission(false, USER_DELAY);
+                    answerPermission(false, 2 * USER_DELAY);
+                }
+            }
+
+            private void answerPermission(final boolean grant, long delay) {
+                platform.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        platform.permissionGranted = grant;
+                        assistant[0].onPermissionsUpdated(LocationAssistant.REQUEST_LOCATION_PERMISSION,
+                                new int[]{grant ? PackageManager.PERMISSION_GRANTED :
+                                        PackageManager.PERMISSION_DENIED});
+                    }
+                }, delay);
+            }
+
+            @Override
+            public void onExplainLocationPermission() {
+            }
+
+            @Override
+            public void onLocationPermissionPermanentlyDeclined(View.OnClickListener fromView,
+                                                                DialogInterface.OnClickListener fromDialog) {
+                s.permanentlyDeclined = true;
+            }
+
+            @Override
+            public void onNeedLocationSettingsChange() {
+                if (s.numSettingsPrompts++ > 0) return;
+                final boolean accept = s.settings == Settings.RESOLUTION_ACCEPTED;
+                platform.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (accept) platform.setProvidersEnabled(true);
+                        assistant[0].onActivityResult(LocationAssistant.REQUEST_CHECK_SETTINGS,
+                                accept ? Activity.RESULT_OK : Activity.RESULT_CANCELED);
+                    }
+                }, USER_DELAY);
+            }
+
+            @Override
+            public void onFallBackToSystemSettings(View.OnClickListener fromView,
+                                                   DialogInterface.OnClickListener fromDialog) {
+                if (s.numProviderPrompts++ > 0) return;
+                platform.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        platform.setProvidersEnabled(true);
+                    }
+                }, PROVIDER_DELAY);
+            }
+
+            @Override
+            public void onNewLocationAvailable(Location location) {
+            }
+
+            @Override
+            public void onMockLocationsDetected(View.OnClickListener fromView,
+                                                DialogInterface.OnClickListener fromDialog) {
+            }
+
+            @Override
+            public void onError(LocationAssistant.ErrorType type, String message) {
+                s.errors.add(type);
+            }
+        };
+
+        assistant[0] = new LocationAssistant(null, user, LocationAssistant.Accuracy.HIGH, 1000, false, platform);
+        assistant[0].setQuiet(true);
+        assistant[0].start();
+        while (assistant[0].getTimeToFirstFix() < 0 && platform.step(DEADLINE)) {
+            // Run until the first fix or until nothing happens anymore
+        }
+
+        s.timeToFirstFix = assistant[0].getTimeToFirstFix();
+        s.timeToLastKnownLocation = assistant[0].getTimeToLastKnownLocation();
+        s.numServiceCalls = assistant[0].getNumServiceCalls();
+        s.numPlatformCalls = platform.getNumServiceCalls();
+        return platform;
+    }
+}
@@ -0,0 +1,218 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Measures the compression ratio and the encoding/decoding throughput of the LocationCodec on synthetic but
+ * realistic tracks, and checks that they round-trip within the quantization error.
+ * <p>
+ * The tracks are 1 Hz GPS recordings of a walk, a bike ride and a drive, with a correlated position error of a few
+ * meters, as well as accuracy, altitude, speed and bearing. The baseline is a fixed-width record of the same fields
+ * (three doubles, one long, three floats and a flag byte, 45 bytes).
+ */
+public class LocationCodecBenchmark {
+
+    private static final int RAW_FIX_BYTES = 3 * 8 + 8 + 3 * 4 + 1;
+    private static final int MAX_BYTES_PER_FIX = 15;
+    private static final int TRACK_LENGTH = 3600;
+    private static final int THROUGHPUT_ROUNDS = 20;
+
+    private static final double METERS_PER_DEGREE = 111319.49;
+
+    @Test
+    public void compressionRatio() {
+        checkCompression("walk", track(1.4, 0.3, 1));
+        checkCompression("bike", track(5.5, 0.1, 2));
+        checkCompression("drive", track(16, 0.05, 3));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        TestLocation[] track = track(16, 0.05, 4);
+        LocationCodec.Encoder encoder = new LocationCodec.Encoder();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (TestLocation location : track)
+            encoder.encode(location, bytes);
+
+        LocationCodec.Decoder decoder = new LocationCodec.Decoder("fused");
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes.toByteArray());
+        TestLocation out = new TestLocation("test");
+        for (TestLocation expected : track) {
+            assertTrue(decoder.decode(in, out));
+            assertEquals(expected.getLatitude(), out.getLatitude(), 1e-7);
+            assertEquals(expected.getLongitude(), out.getLongitude(), 1e-7);
+            assertEquals(expected.getTime(), out.getTime());
+            assertEquals(expected.getAccuracy(), out.getAccuracy(), 0.051);
+            assertEquals(expected.getAltitude(), out.getAltitude(), 0.051);
+            assertEquals(expected.getSpeed(), out.getSpeed(), 0.0051);
+            assertEquals(expected.getBearing(), out.getBearing(), 0.051);
+        }
+        assertFalse(decoder.decode(in, out));
+        assertEquals(encoder.getNumFixes(), decoder.getNumFixes());
+        assertEquals(encoder.getNumBytes(), decoder.getNumBytes());
+    }
+
+    @Test
+    public void truncatedInputDoesNotAdvanceDecoder() {
+        TestLocation[] track = track(1.4, 0.3, 5);
+        LocationCodec.Encoder encoder = new LocationCodec.Encoder();
+        ByteBuffer buffer = ByteBuffer.allocate(track.length * 32);
+        for (TestLocation location : track)
+            encoder.encode(location, buffer);
+        buffer.flip();
+        int end = buffer.limit();
+
+        // Feed the data in small chunks, as if it arrived over the network
+        LocationCodec.Decoder decoder = new LocationCodec.Decoder("fused");
+        TestLocation out = new TestLocation("test");
+        int i = 0;
+        buffer.limit(0);
+        while (i < track.length) {
+            try {
+                if (decoder.decode(buffer, out)) {
+                    assertEquals(track[i].getLatitude(), out.getLatitude(), 1e-7);
+                    assertEquals(track[i].getTime(), out.getTime());
+                    i++;
+                    continue;
+                }
+            } catch (BufferUnderflowException e) {
+                // Wait for more data
+            }
+            if (buffer.limit() == end) fail("Ran out of data after " + i + " fixes");
+            buffer.limit(Math.min(buffer.limit() + 7, end));
+        }
+    }
+
+    @Test
+    public void corruptInputRestoresPosition() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.put((byte) 0);
+        // A latitude delta whose varint never ends
+        while (buffer.hasRemaining())
+            buffer.put((byte) 0xff);
+        buffer.flip();
+
+        LocationCodec.Decoder decoder = new LocationCodec.Decoder("fused");
+        try {
+            decoder.decode(buffer, new TestLocation("test"));
+            fail("Decoded a malformed varint");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(0, buffer.position());
+        assertEquals(0, decoder.getNumFixes());
+        assertEquals(0, decoder.getNumBytes());
+    }
+
+    @Test
+    public void throughput() {
+        TestLocation[] track = track(16, 0.05, 6);
+        ByteBuffer buffer = ByteBuffer.allocate(track.length * 32);
+        TestLocation out = new TestLocation("test");
+
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        // The first half of the rounds is warm-up for the JIT
+        for (int round = 0; round < THROUGHPUT_ROUNDS; round++) {
+            LocationCodec.Encoder encoder = new LocationCodec.Encoder();
+            buffer.clear();
+            long start = System.nanoTime();
+            for (TestLocation location : track)
+                encoder.encode(location, buffer);
+            long encoded = System.nanoTime();
+            buffer.flip();
+            LocationCodec.Decoder decoder = new LocationCodec.Decoder("fused");
+            while (decoder.decode(buffer, out)) {
+                // Decode everything
+            }
+            long decoded = System.nanoTime();
+            if (round >= THROUGHPUT_ROUNDS / 2) {
+                encodeNanos += encoded - start;
+                decodeNanos += decoded - encoded;
+            }
+        }
+
+        long numFixes = (long) track.length * (THROUGHPUT_ROUNDS - THROUGHPUT_ROUNDS / 2);
+        System.out.println(String.format("LocationCodec: encode %.0f fixes/s, decode %.0f fixes/s",
+                numFixes * 1e9 / encodeNanos, numFixes * 1e9 / decodeNanos));
+    }
+
+    private static void checkCompression(String name, TestLocation[] track) {
+        LocationCodec.Encoder encoder = new LocationCodec.Encoder();
+        ByteBuffer buffer = ByteBuffer.allocate(track.length * 32);
+        for (TestLocation location : track)
+            encoder.encode(location, buffer);
+
+        double bytesPerFix = (double) encoder.getNumBytes() / encoder.getNumFixes();
+        System.out.println(String.format("LocationCodec (%s): %.2f bytes/fix, %.1fx smaller than raw", name,
+                bytesPerFix, RAW_FIX_BYTES / bytesPerFix));
+        assertTrue(name + " takes " + bytesPerFix + " bytes per fix", bytesPerFix <= MAX_BYTES_PER_FIX);
+    }
+
+    /**
+     * Simulates a 1 Hz recording of a journey at the given speed, starting in Munich.
+     *
+     * @param speed    the mean speed (in m/s)
+     * @param turnRate how much the heading wanders (in radians per second)
+     */
+    static TestLocation[] track(double speed, double turnRate, long seed) {
+        Random random = new Random(seed);
+        TestLocation[] track = new TestLocation[TRACK_LENGTH];
+        double lat = 48.137154;
+        double lon = 11.576124;
+        double alt = 519;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        double errorNorth = 0;
+        double errorEast = 0;
+        long time = 1489000000000L;
+        for (int i = 0; i < TRACK_LENGTH; i++) {
+            double v = Math.max(speed * (1 + 0.2 * random.nextGaussian()), 0);
+            heading += turnRate * random.nextGaussian();
+            lat += v * Math.cos(heading) / METERS_PER_DEGREE;
+            lon += v * Math.sin(heading) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(lat)));
+            alt += 0.1 * random.nextGaussian();
+            // GPS errors are strongly correlated from one second to the next
+            errorNorth = 0.95 * errorNorth + 0.3 * random.nextGaussian();
+            errorEast = 0.95 * errorEast + 0.3 * random.nextGaussian();
+
+            TestLocation location = new TestLocation("fused");
+            location.setTime(time + i * 1000L);
+            location.setLatitude(lat + errorNorth / METERS_PER_DEGREE);
+            location.setLongitude(lon + errorEast / (METERS_PER_DEGREE * Math.cos(Math.toRadians(lat))));
+            location.setAccuracy((float) (4 + 3 * random.nextDouble()));
+            location.setAltitude(alt + 2 * errorNorth);
+            location.setSpeed((float) v);
+            location.setBearing((float) ((Math.toDegrees(heading) % 360 + 360) % 360));
+            track[i] = location;
+        }
+        return track;
+    }
+}
@@ -0,0 +1,281 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import com.google.android.gms.location.LocationListener;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the NmeaParser against a synthetic 1 Hz receiver stream (GGA, GSA, GSV and RMC per epoch) and measures how
+ * many sentences per second it gets through.
+ */
+public class NmeaParserBenchmark {
+
+    private static final int NUM_EPOCHS = 3600;
+    private static final int THROUGHPUT_ROUNDS = 20;
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final long DATE_MILLIS = 1489017600000L; // 2017-03-09
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private static class Epoch {
+        long timeOfDay;
+        double latitude;
+        double longitude;
+        double altitude;
+        double speedKnots;
+        double bearing;
+        double hdop;
+    }
+
+    private static class RecordingParser extends NmeaParser {
+        RecordingParser(LocationListener listener) {
+            super(listener);
+        }
+
+        @Override
+        Location newLocation() {
+            return new TestLocation(LocationManager.GPS_PROVIDER);
+        }
+    }
+
+    private static class Recorder implements LocationListener {
+        final List<Location> locations = new ArrayList<Location>();
+
+        @Override
+        public void onLocationChanged(Location location) {
+            locations.add(location);
+        }
+    }
+
+    @Test
+    public void parsesEveryFix() {
+        Epoch[] epochs = epochs(12 * 3600000L, 1);
+        byte[] stream = stream(epochs);
+        Recorder recorder = new Recorder();
+        NmeaParser parser = new RecordingParser(recorder);
+
+        // Deliver the stream in arbitrary chunks, as a Bluetooth socket would
+        Random random = new Random(2);
+        int pos = 0;
+        while (pos < stream.length) {
+            int n = Math.min(1 + random.nextInt(64), stream.length - pos);
+            parser.feed(stream, pos, n);
+            pos += n;
+        }
+
+        assertEquals(4 * NUM_EPOCHS, parser.getNumSentences());
+        assertEquals(0, parser.getNumChecksumErrors());
+        assertEquals(NUM_EPOCHS, parser.getNumFixes());
+        assertEquals(NUM_EPOCHS, recorder.locations.size());
+        for (int i = 0; i < NUM_EPOCHS; i++) {
+            Epoch expected = epochs[i];
+            Location location = recorder.locations.get(i);
+            assertEquals(DATE_MILLIS + expected.timeOfDay, location.getTime());
+            assertEquals(expected.latitude, location.getLatitude(), 1e-6);
+            assertEquals(expected.longitude, location.getLongitude(), 1e-6);
+            assertEquals(expected.altitude, location.getAltitude(), 0.051);
+            assertEquals(expected.speedKnots * 0.514444, location.getSpeed(), 0.001);
+            assertEquals(expected.bearing, location.getBearing(), 0.051);
+            assertEquals(expected.hdop * 5, location.getAccuracy(), 0.051);
+        }
+    }
+
+    @Test
+    public void corruptSentencesAreCounted() {
+        byte[] stream = stream(epochs(12 * 3600000L, 3));
+        // Flip a digit in the first sentence (a GGA), so the first epoch has no altitude
+        for (int i = 0; ; i++) {
+            if (stream[i] >= '0' && stream[i] <= '8') {
+                stream[i]++;
+                break;
+            }
+        }
+        Recorder recorder = new Recorder();
+        NmeaParser parser = new RecordingParser(recorder);
+        parser.feed(stream, 0, stream.length);
+
+        assertEquals(1, parser.getNumChecksumErrors());
+        assertEquals(4 * NUM_EPOCHS - 1, parser.getNumSentences());
+        assertEquals(NUM_EPOCHS, parser.getNumFixes());
+        assertTrue(!recorder.locations.get(0).hasAltitude());
+    }
+
+    @Test
+    public void timesContinueAcrossMidnight() {
+        Epoch[] epochs = epochs(MILLIS_PER_DAY - 5000, 4);
+        for (Epoch epoch : epochs)
+            epoch.timeOfDay %= MILLIS_PER_DAY;
+
+        // The RMC of the first epoch after midnight carries the new date, but the GGA comes first
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            long date = DATE_MILLIS + (i < 5 ? 0 : MILLIS_PER_DAY);
+            appendGga(sb, epochs[i]);
+            appendRmc(sb, epochs[i], date);
+        }
+        Recorder recorder = new Recorder();
+        NmeaParser parser = new RecordingParser(recorder);
+        parser.feed(sb);
+
+        assertEquals(10, recorder.locations.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals(DATE_MILLIS + MILLIS_PER_DAY - 5000 + i * 1000L, recorder.locations.get(i).getTime());
+    }
+
+    @Test
+    public void hdopDoesNotCarryOverToTheNextEpoch() {
+        Epoch[] epochs = epochs(12 * 3600000L, 6);
+        StringBuilder sb = new StringBuilder();
+        // First epoch: the receiver sends GSA after the fix is complete
+        appendGga(sb, epochs[0]);
+        appendRmc(sb, epochs[0], DATE_MILLIS);
+        appendSentence(sb, "GPGSA,A,3,04,05,09,12,17,20,24,25,,,,,2.5,1.3,2.1");
+        // Second epoch: GGA without HDOP and no GSA
+        appendSentence(sb, String.format(Locale.US, "GPGGA,%s,%s,1,08,,%.1f,M,47.0,M,,",
+                formatTime(epochs[1].timeOfDay), formatPosition(epochs[1]), epochs[1].altitude));
+        appendRmc(sb, epochs[1], DATE_MILLIS);
+        Recorder recorder = new Recorder();
+        NmeaParser parser = new RecordingParser(recorder);
+        parser.feed(sb);
+
+        assertEquals(2, recorder.locations.size());
+        assertEquals(epochs[0].hdop * 5, recorder.locations.get(0).getAccuracy(), 0.051);
+        assertTrue(!recorder.locations.get(1).hasAccuracy());
+    }
+
+    @Test
+    public void throughput() {
+        byte[] stream = stream(epochs(12 * 3600000L, 5));
+        long nanos = 0;
+        long numSentences = 0;
+        // The first half of the rounds is warm-up for the JIT
+        for (int round = 0; round < THROUGHPUT_ROUNDS; round++) {
+            NmeaParser parser = new RecordingParser(new Recorder());
+            long start = System.nanoTime();
+            parser.feed(stream, 0, stream.length);
+            long end = System.nanoTime();
+            if (round >= THROUGHPUT_ROUNDS / 2) {
+                nanos += end - start;
+                numSentences += parser.getNumSentences();
+            }
+        }
+
+        long numBytes = (long) stream.length * (THROUGHPUT_ROUNDS - THROUGHPUT_ROUNDS / 2);
+        System.out.println(String.format(Locale.US, "NmeaParser: %.0f sentences/s, %.1f MB/s",
+                numSentences * 1e9 / nanos, numBytes * 1e3 / nanos));
+    }
+
+    /**
+     * Simulates a 1 Hz drive starting in Munich at the given time of day (in milliseconds).
+     */
+    private static Epoch[] epochs(long startTimeOfDay, long seed) {
+        Random random = new Random(seed);
+        Epoch[] epochs = new Epoch[NUM_EPOCHS];
+        double lat = 48.137154;
+        double lon = 11.576124;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        double alt = 519;
+        for (int i = 0; i < NUM_EPOCHS; i++) {
+            double v = 16 * (1 + 0.2 * random.nextGaussian());
+            heading += 0.05 * random.nextGaussian();
+            lat += v * Math.cos(heading) / 111319.49;
+            lon += v * Math.sin(heading) / (111319.49 * Math.cos(Math.toRadians(lat)));
+            alt += 0.1 * random.nextGaussian();
+
+            Epoch epoch = new Epoch();
+            epoch.timeOfDay = startTimeOfDay + i * 1000L;
+            epoch.latitude = lat;
+            epoch.longitude = lon;
+            epoch.altitude = Math.round(alt * 10) / 10.0;
+            epoch.speedKnots = Math.round(Math.abs(v) / 0.514444 * 10) / 10.0;
+            epoch.bearing = Math.round((Math.toDegrees(heading) % 360 + 360) % 360 * 10) / 10.0;
+            epoch.hdop = Math.round((0.8 + random.nextDouble()) * 10) / 10.0;
+            epochs[i] = epoch;
+        }
+        return epochs;
+    }
+
+    private static byte[] stream(Epoch[] epochs) {
+        StringBuilder sb = new StringBuilder();
+        for (Epoch epoch : epochs) {
+            appendGga(sb, epoch);
+            appendSentence(sb, String.format(Locale.US, "GPGSA,A,3,04,05,09,12,17,20,24,25,,,,,%.1f,%.1f,%.1f",
+                    epoch.hdop * 1.6, epoch.hdop, epoch.hdop * 1.2));
+            appendSentence(sb, "GPGSV,3,1,11,04,24,301,41,05,38,227,44,09,07,062,35,12,65,194,47");
+            appendRmc(sb, epoch, DATE_MILLIS);
+        }
+        return sb.toString().getBytes(ASCII);
+    }
+
+    private static void appendGga(StringBuilder sb, Epoch epoch) {
+        appendSentence(sb, String.format(Locale.US, "GPGGA,%s,%s,1,08,%.1f,%.1f,M,47.0,M,,",
+                formatTime(epoch.timeOfDay), formatPosition(epoch), epoch.hdop, epoch.altitude));
+    }
+
+    private static void appendRmc(StringBuilder sb, Epoch epoch, long dateMillis) {
+        long days = dateMillis / MILLIS_PER_DAY;
+        // Civil date from days since the epoch (H. Hinnant's algorithm)
+        long z = days + 719468;
+        long era = z / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        appendSentence(sb, String.format(Locale.US, "GPRMC,%s,A,%s,%.1f,%.1f,%02d%02d%02d,,,A",
+                formatTime(epoch.timeOfDay), formatPosition(epoch), epoch.speedKnots, epoch.bearing,
+                day, month, year % 100));
+    }
+
+    private static String formatTime(long timeOfDay) {
+        return String.format(Locale.US, "%02d%02d%02d.%02d", timeOfDay / 3600000, timeOfDay / 60000 % 60,
+                timeOfDay / 1000 % 60, timeOfDay % 1000 / 10);
+    }
+
+    private static String formatPosition(Epoch epoch) {
+        return formatDegreesMinutes(Math.abs(epoch.latitude), 2) + (epoch.latitude < 0 ? ",S," : ",N,") +
+                formatDegreesMinutes(Math.abs(epoch.longitude), 3) + (epoch.longitude < 0 ? ",W" : ",E");
+    }
+
+    private static String formatDegreesMinutes(double degrees, int width) {
+        int whole = (int) degrees;
+        double minutes = (degrees - whole) * 60;
+        return String.format(Locale.US, "%0" + width + "d%08.5f", whole, minutes);
+    }
+
+    private static void appendSentence(StringBuilder sb, String body) {
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++)
+            checksum ^= body.charAt(i);
+        sb.append('$').append(body).append('*').append(String.format("%02X", checksum)).append("\r\n");
+    }
+}
@@ -0,0 +1,253 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.common.api.Status;
+import com.google.android.gms.location.LocationListener;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationSettingsRequest;
+import com.google.android.gms.location.LocationSettingsResult;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * A LocationPlatform that runs on a virtual clock and answers with scripted Play services behavior.
+ * Main thread, background thread and Play services callbacks are all events in a single queue, so a scenario runs
+ * deterministically and takes no real time.
+ */
+class SimulatedPlatform extends LocationPlatform {
+
+    // Script (all durations in milliseconds)
+    long backgroundDelay = 20;
+    long connectDelay = 100;
+    boolean connectFails;
+    long settingsDelay = 150;
+    int settingsStatus;
+    boolean permissionGranted = true;
+    boolean gpsEnabled = true;
+    boolean networkEnabled = true;
+    long firstFixDelay = 1000;
+    long fixInterval = 1000;
+    Location lastKnownLocation;
+
+    private long now;
+    private long numEvents;
+    private final PriorityQueue<Event> events = new PriorityQueue<Event>(16, new Comparator<Event>() {
+        @Override
+        public int compare(Event a, Event b) {
+            if (a.time != b.time) return a.time < b.time ? -1 : 1;
+            return a.order < b.order ? -1 : a.order > b.order ? 1 : 0;
+        }
+    });
+
+    private GoogleApiClient.ConnectionCallbacks callbacks;
+    private GoogleApiClient.OnConnectionFailedListener failedListener;
+    private boolean connected;
+    private LocationListener updatesListener;
+    private int updatesGeneration;
+    private int numServiceCalls;
+
+    private static final class Event {
+        final long time;
+        final long order;
+        final Runnable task;
+
+        Event(long time, long order, Runnable task) {
+            this.time = time;
+            this.order = order;
+            this.task = task;
+        }
+    }
+
+    /**
+     * Returns the current virtual time.
+     */
+    long now() {
+        return now;
+    }
+
+    /**
+     * Returns the number of IPC calls the LocationAssistant made through the client.
+     */
+    int getNumServiceCalls() {
+        return numServiceCalls;
+    }
+
+    /**
+     * Schedules a task on the virtual main thread.
+     */
+    void schedule(Runnable task, long delay) {
+        events.add(new Event(now + Math.max(delay, 0), numEvents++, task));
+    }
+
+    /**
+     * Runs the next event, unless it is due after the deadline.
+     *
+     * @return {@code true} if an event was run, {@code false} if there is none left before the deadline
+     */
+    boolean step(long deadline) {
+        Event event = events.peek();
+        if (event == null || event.time > deadline) return false;
+        events.poll();
+        now = event.time;
+        event.task.run();
+        return true;
+    }
+
+    /**
+     * Turns the location providers on or off, as the user would in the system settings.
+     */
+    void setProvidersEnabled(boolean enabled) {
+        boolean wasEnabled = gpsEnabled || networkEnabled;
+        gpsEnabled = enabled;
+        networkEnabled = enabled;
+        if (enabled && !wasEnabled && updatesListener != null) startFixes();
+    }
+
+    @Override
+    Client createClient(Context context, GoogleApiClient.ConnectionCallbacks callbacks,
+                        GoogleApiClient.OnConnectionFailedListener failedListener) {
+        this.callbacks = callbacks;
+        this.failedListener = failedListener;
+        return new SimulatedClient();
+    }
+
+    @Override
+    long elapsedRealtime() {
+        return now;
+    }
+
+    @Override
+    void postDelayed(Runnable task, long delay) {
+        schedule(task, delay);
+    }
+
+    @Override
+    void executeInBackground(Runnable task) {
+        schedule(task, backgroundDelay);
+    }
+
+    @Override
+    boolean hasLocationPermission(Context context) {
+        return permissionGranted;
+    }
+
+    @Override
+    boolean isMockLocationSettingEnabled(Context context) {
+        return false;
+    }
+
+    @Override
+    boolean isProviderEnabled(Context context, String provider) {
+        return LocationManager.GPS_PROVIDER.equals(provider) ? gpsEnabled : networkEnabled;
+    }
+
+    private void startFixes() {
+        final int generation = updatesGeneration;
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                // Stop when the request has been replaced or removed, or the providers have been turned off
+                if (generation != updatesGeneration || updatesListener == null || !(gpsEnabled || networkEnabled))
+                    return;
+                updatesListener.onLocationChanged(new Location("fused"));
+                schedule(this, fixInterval);
+            }
+        }, firstFixDelay);
+    }
+
+    private class SimulatedClient implements Client {
+
+        @Override
+        public void connect() {
+            numServiceCalls++;
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (connectFails) {
+                        failedListener.onConnectionFailed(new ConnectionResult(ConnectionResult.SERVICE_MISSING));
+                        return;
+                    }
+                    connected = true;
+                    callbacks.onConnected(null);
+                }
+            }, connectDelay);
+        }
+
+        @Override
+        public void disconnect() {
+            numServiceCalls++;
+            connected = false;
+            updatesListener = null;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public Location getLastLocation() {
+            numServiceCalls++;
+            if (!permissionGranted) throw new SecurityException("No location permission");
+            return lastKnownLocation;
+        }
+
+        @Override
+        public boolean isLocationAvailable() {
+            numServiceCalls++;
+            if (!permissionGranted) throw new SecurityException("No location permission");
+            return gpsEnabled || networkEnabled;
+        }
+
+        @Override
+        public void checkLocationSettings(LocationSettingsRequest request,
+                                          final ResultCallback<LocationSettingsResult> callback) {
+            numServiceCalls++;
+            final int status = settingsStatus;
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onResult(new LocationSettingsResult(new Status(status)));
+                }
+            }, settingsDelay);
+        }
+
+        @Override
+        public void requestLocationUpdates(LocationRequest request, LocationListener listener) {
+            numServiceCalls++;
+            if (!permissionGranted) throw new SecurityException("No location permission");
+            updatesListener = listener;
+            updatesGeneration++;
+            if (gpsEnabled || networkEnabled) startFixes();
+        }
+
+        @Override
+        public void removeLocationUpdates(LocationListener listener) {
+            numServiceCalls++;
+            if (updatesListener == listener) updatesListener = null;
+        }
+    }
+}
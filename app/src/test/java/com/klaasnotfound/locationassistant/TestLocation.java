@@ -0,0 +1,181 @@
+// https://github.com/klaasnotfound/LocationAssistant
+/*
+ *    Copyright 2017 Klaas Klasing (klaas [at] klaasnotfound.com)
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.klaasnotfound.locationassistant;
+
+import android.location.Location;
+
+/**
+ * A Location that actually stores its values. In JVM tests, the framework's Location is a stub whose getters only
+ * return defaults.
+ */
+class TestLocation extends Location {
+
+    private String provider;
+    private long time;
+    private long elapsedRealtimeNanos;
+    private double latitude;
+    private double longitude;
+    private boolean hasAltitude;
+    private double altitude;
+    private boolean hasSpeed;
+    private float speed;
+    private boolean hasBearing;
+    private float bearing;
+    private boolean hasAccuracy;
+    private float accuracy;
+
+    TestLocation(String provider) {
+        super(provider);
+        this.provider = provider;
+    }
+
+    @Override
+    public void reset() {
+        provider = null;
+        time = 0;
+        elapsedRealtimeNanos = 0;
+        latitude = 0;
+        longitude = 0;
+        hasAltitude = false;
+        altitude = 0;
+        hasSpeed = false;
+        speed = 0;
+        hasBearing = false;
+        bearing = 0;
+        hasAccuracy = false;
+        accuracy = 0;
+    }
+
+    @Override
+    public String getProvider() {
+        return provider;
+    }
+
+    @Override
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    @Override
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    @Override
+    public long getElapsedRealtimeNanos() {
+        return elapsedRealtimeNanos;
+    }
+
+    @Override
+    public void setElapsedRealtimeNanos(long elapsedRealtimeNanos) {
+        this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+    }
+
+    @Override
+    public double getLatitude() {
+        return latitude;
+    }
+
+    @Override
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    @Override
+    public double getLongitude() {
+        return longitude;
+    }
+
+    @Override
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    @Override
+    public boolean hasAltitude() {
+        return hasAltitude;
+    }
+
+    @Override
+    public double getAltitude() {
+        return altitude;
+    }
+
+    @Override
+    public void setAltitude(double altitude) {
+        this.altitude = altitude;
+        hasAltitude = true;
+    }
+
+    @Override
+    public boolean hasSpeed() {
+        return hasSpeed;
+    }
+
+    @Override
+    public float getSpeed() {
+        return speed;
+    }
+
+    @Override
+    public void setSpeed(float speed) {
+        this.speed = speed;
+        hasSpeed = true;
+    }
+
+    @Override
+    public boolean hasBearing() {
+        return hasBearing;
+    }
+
+    @Override
+    public float getBearing() {
+        return bearing;
+    }
+
+    @Override
+    public void setBearing(float bearing) {
+        this.bearing = bearing;
+        hasBearing = true;
+    }
+
+    @Override
+    public boolean hasAccuracy() {
+        return hasAccuracy;
+    }
+
+    @Override
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    @Override
+    public void setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+        hasAccuracy = true;
+    }
+
+    @Override
+    public boolean isFromMockProvider() {
+        return false;
+    }
+}